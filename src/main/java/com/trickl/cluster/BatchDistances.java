@@ -0,0 +1,160 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+/**
+ * Euclidean distances from blocks of features to every mean, formed as
+ * |x|^2 + |c|^2 - 2 x.c so the work is a matrix product of the features with
+ * the means.
+ * The squared norms of the features are computed once, those of the means after
+ * each update. The product is tiled so a block of features and a block of
+ * means stay in cache together, and each feature value loaded is used against
+ * four means at a time.
+ * Cancellation makes the result less accurate than summing the squared
+ * differences when features are far from the origin relative to their
+ * distance from a mean.
+ */
+final class BatchDistances {
+
+   // Features per tile of the product
+   private static final int ROW_BLOCK = 64;
+
+   // Bytes of means per tile of the product, sized to stay in the L1 cache
+   private static final int MEAN_BLOCK_BYTES = 16384;
+
+   private final CentroidEngine engine;
+   private final int meanBlock;
+   private final double[] rowNorms;
+   private final double[] meanNorms;
+
+   BatchDistances(CentroidEngine engine) {
+      this.engine = engine;
+      int p = engine.p;
+      this.meanBlock = Math.max(4, (MEAN_BLOCK_BYTES / (8 * Math.max(p, 1))) & ~3);
+      this.rowNorms = new double[engine.n];
+      this.meanNorms = new double[engine.clusters];
+      for (int i = 0; i < engine.n; i++) {
+         rowNorms[i] = engine.floatData == null
+                 ? DistanceKernel.dot(engine.data, i * p, engine.data, i * p, p)
+                 : DistanceKernel.dot(engine.floatData, i * p, engine.floatData, i * p, p);
+      }
+   }
+
+   /**
+    * Recompute the squared norms of the means, required after each update.
+    */
+   void updateMeans() {
+      int p = engine.p;
+      for (int k = 0; k < engine.clusters; k++) {
+         meanNorms[k] = engine.floatCentroids == null
+                 ? DistanceKernel.dot(engine.centroids, k * p, engine.centroids, k * p, p)
+                 : DistanceKernel.dot(engine.floatCentroids, k * p, engine.floatCentroids, k * p, p);
+      }
+   }
+
+   /**
+    * Calculate the distance from each feature in [from, to) to each mean.
+    * @param distances Receives the (to - from) x clusters row-major distances
+    * @param offset The position in distances of the first feature's distances
+    */
+   void distances(int from, int to, double[] distances, int offset) {
+      int clusters = engine.clusters;
+      for (int rowFrom = from; rowFrom < to; rowFrom += ROW_BLOCK) {
+         int rowTo = Math.min(to, rowFrom + ROW_BLOCK);
+         for (int meanFrom = 0; meanFrom < clusters; meanFrom += meanBlock) {
+            int meanTo = Math.min(clusters, meanFrom + meanBlock);
+            for (int i = rowFrom; i < rowTo; i++) {
+               int rowOffset = offset + (i - from) * clusters;
+               if (engine.floatData == null) {
+                  products(engine.data, engine.centroids, i, meanFrom, meanTo, distances, rowOffset);
+               } else {
+                  products(engine.floatData, engine.floatCentroids, i, meanFrom, meanTo, distances, rowOffset);
+               }
+            }
+         }
+      }
+
+      for (int i = from; i < to; i++) {
+         int rowOffset = offset + (i - from) * clusters;
+         for (int k = 0; k < clusters; k++) {
+            double distanceSquared = rowNorms[i] + meanNorms[k] - 2 * distances[rowOffset + k];
+            distances[rowOffset + k] = Math.sqrt(Math.max(0, distanceSquared));
+         }
+      }
+   }
+
+   // The products of feature i with the means in [meanFrom, meanTo), four means at a time
+   private void products(double[] data, double[] centroids, int i, int meanFrom, int meanTo,
+           double[] products, int rowOffset) {
+      int p = engine.p;
+      int x = i * p;
+      int k = meanFrom;
+      for (; k + 4 <= meanTo; k += 4) {
+         int c0 = k * p;
+         int c1 = c0 + p;
+         int c2 = c1 + p;
+         int c3 = c2 + p;
+         double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+         for (int j = 0; j < p; j++) {
+            double value = data[x + j];
+            sum0 += value * centroids[c0 + j];
+            sum1 += value * centroids[c1 + j];
+            sum2 += value * centroids[c2 + j];
+            sum3 += value * centroids[c3 + j];
+         }
+         products[rowOffset + k] = sum0;
+         products[rowOffset + k + 1] = sum1;
+         products[rowOffset + k + 2] = sum2;
+         products[rowOffset + k + 3] = sum3;
+      }
+      for (; k < meanTo; k++) {
+         products[rowOffset + k] = DistanceKernel.dot(data, x, centroids, k * p, p);
+      }
+   }
+
+   private void products(float[] data, float[] centroids, int i, int meanFrom, int meanTo,
+           double[] products, int rowOffset) {
+      int p = engine.p;
+      int x = i * p;
+      int k = meanFrom;
+      for (; k + 4 <= meanTo; k += 4) {
+         int c0 = k * p;
+         int c1 = c0 + p;
+         int c2 = c1 + p;
+         int c3 = c2 + p;
+         double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+         for (int j = 0; j < p; j++) {
+            double value = data[x + j];
+            sum0 += value * centroids[c0 + j];
+            sum1 += value * centroids[c1 + j];
+            sum2 += value * centroids[c2 + j];
+            sum3 += value * centroids[c3 + j];
+         }
+         products[rowOffset + k] = sum0;
+         products[rowOffset + k + 1] = sum1;
+         products[rowOffset + k + 2] = sum2;
+         products[rowOffset + k + 3] = sum3;
+      }
+      for (; k < meanTo; k++) {
+         products[rowOffset + k] = DistanceKernel.dot(data, x, centroids, k * p, p);
+      }
+   }
+}
@@ -0,0 +1,370 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.doublealgo.Statistic;
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.PriorityQueue;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * Divisive K-Means, repeatedly splitting the cluster with the largest sum of
+ * squared errors in two with a 2-means, until there are enough clusters.
+ * Each split only clusters the features of the cluster being split, so a
+ * balanced hierarchy costs O(n log k) distance calculations per pass rather
+ * than O(n k), and the splits are kept as a ClusterTree.
+ * The features stay in the leaf they were split into, so unlike KMeans a
+ * feature need not be labelled with its closest mean.
+ * The error is only a sum of squared errors for the Euclidean distance, so
+ * no other distance measure is accepted.
+ * See: A Comparison of Document Clustering Techniques
+ * M. Steinbach, G. Karypis, V. Kumar, KDD Workshop on Text Mining 2000
+ */
+public class BisectingKMeans implements WeightedClusterAlgorithm {
+
+   private DoubleMatrix2D means;
+   private DoubleMatrix2D partition;
+   private int[] labels;
+   private int clusters;
+   private double objective;
+   private ClusterModel model;
+   private ClusterTree tree;
+   private KMeans kmeans = new KMeans();
+   private int splitTrials = 1;
+   private RandomGenerator randomGenerator = new MersenneTwister();
+   private IterationListener iterationListener;
+
+   public BisectingKMeans() {
+   }
+
+   @Override
+   public void cluster(DoubleMatrix2D data, int clusters) {
+      cluster(data, null, clusters);
+   }
+
+   /**
+    * @param clusters The number of clusters, fewer are found only if the
+    * clusters cannot be split further, as when features are identical
+    */
+   @Override
+   public void cluster(DoubleMatrix2D data, double[] weights, int clusters) {
+      int n = data.rows(); // Number of features
+      int p = data.columns(); // Dimensions of features
+      if (clusters < 1 || clusters > n) {
+         throw new IllegalArgumentException("Between one and " + n + " clusters are required.");
+      }
+      CentroidEngine.checkWeights(weights, n);
+      if (kmeans.getDistanceMeasure() != Statistic.EUCLID) {
+         throw new IllegalStateException("Bisecting requires the Euclidean distance measure.");
+      }
+
+      double[] values = new double[n * p];
+      int[] order = new int[n];
+      for (int i = 0; i < n; i++) {
+         for (int j = 0; j < p; j++) {
+            values[i * p + j] = data.getQuick(i, j);
+         }
+         order[i] = i;
+      }
+      kmeans.setRandomGenerator(randomGenerator);
+
+      // Always split the cluster with the largest error next
+      PriorityQueue<ClusterTree> splittable = new PriorityQueue<ClusterTree>(clusters, new Comparator<ClusterTree>() {
+
+         @Override
+         public int compare(ClusterTree a, ClusterTree b) {
+            return Double.compare(b.getObjective(), a.getObjective());
+         }
+      });
+      tree = node(values, weights, order, 0, n, p);
+      splittable.add(tree);
+
+      SplitMetrics splitMetrics = iterationListener == null ? null : new SplitMetrics();
+      IterationListener kmeansListener = kmeans.getIterationListener();
+      if (splitMetrics != null) {
+         kmeans.setIterationListener(splitMetrics);
+      }
+
+      int leaves = 1;
+      double totalObjective = tree.getObjective();
+      try {
+         while (leaves < clusters && !splittable.isEmpty()) {
+            ClusterTree node = splittable.poll();
+            if (node.getSize() < 2 || node.getObjective() == 0) {
+               continue;
+            }
+
+            if (splitMetrics != null) {
+               splitMetrics.reset();
+            }
+            if (!split(node, data, values, weights, order, p)) {
+               continue;
+            }
+            leaves++;
+            splittable.add(node.getLeft());
+            splittable.add(node.getRight());
+            totalObjective += node.getLeft().getObjective() + node.getRight().getObjective() - node.getObjective();
+
+            if (iterationListener != null) {
+               iterationListener.iterationCompleted(new IterationEvent(this, leaves - 2, totalObjective, -1, Double.NaN,
+                       splitMetrics.distanceEvaluations, splitMetrics.updateTime, splitMetrics.assignmentTime));
+            }
+         }
+      } finally {
+         kmeans.setIterationListener(kmeansListener);
+      }
+
+      // Label the leaves from left to right
+      labels = new int[n];
+      means = new DenseDoubleMatrix2D(p, leaves);
+      objective = 0;
+      int label = 0;
+      Deque<ClusterTree> stack = new ArrayDeque<ClusterTree>();
+      stack.push(tree);
+      while (!stack.isEmpty()) {
+         ClusterTree node = stack.pop();
+         if (!node.isLeaf()) {
+            stack.push(node.getRight());
+            stack.push(node.getLeft());
+            continue;
+         }
+
+         node.setLabel(label);
+         for (int s = node.from(); s < node.to(); s++) {
+            labels[order[s]] = label;
+         }
+         double[] mean = node.getMean();
+         for (int j = 0; j < p; j++) {
+            means.setQuick(j, label, mean[j]);
+         }
+         objective += node.getObjective();
+         label++;
+      }
+
+      this.clusters = leaves;
+      partition = null;
+      model = ClusterModel.fromMeans(means, Statistic.EUCLID, Double.NaN);
+   }
+
+   // Split a node with the best of the 2-means trials, false if every trial
+   // left one side empty
+   private boolean split(ClusterTree node, DoubleMatrix2D data, double[] values, double[] weights, int[] order,
+           int p) {
+      int from = node.from();
+      int m = node.getSize();
+
+      // A view of the node's rows, copied only once by the 2-means itself
+      DoubleMatrix2D rows = data.viewSelection(Arrays.copyOfRange(order, from, from + m), null);
+      double[] rowWeights = null;
+      if (weights != null) {
+         rowWeights = new double[m];
+         for (int s = 0; s < m; s++) {
+            rowWeights[s] = weights[order[from + s]];
+         }
+      }
+
+      int[] bestLabels = null;
+      double bestObjective = Double.POSITIVE_INFINITY;
+      for (int trial = 0; trial < splitTrials; trial++) {
+         kmeans.cluster(rows, rowWeights, 2);
+         int[] splitLabels = kmeans.getLabels();
+         int leftSize = 0;
+         for (int s = 0; s < m; s++) {
+            leftSize += splitLabels[s] == 0 ? 1 : 0;
+         }
+         if (leftSize > 0 && leftSize < m && kmeans.getObjective() < bestObjective) {
+            bestObjective = kmeans.getObjective();
+            bestLabels = splitLabels;
+         }
+      }
+      if (bestLabels == null) {
+         return false;
+      }
+
+      // Reorder the node's features so that each child holds a contiguous range
+      int[] split = new int[m];
+      int left = 0;
+      for (int s = 0; s < m; s++) {
+         if (bestLabels[s] == 0) {
+            split[left++] = order[from + s];
+         }
+      }
+      int right = left;
+      for (int s = 0; s < m; s++) {
+         if (bestLabels[s] != 0) {
+            split[right++] = order[from + s];
+         }
+      }
+      System.arraycopy(split, 0, order, from, m);
+
+      node.setChildren(node(values, weights, order, from, from + left, p),
+              node(values, weights, order, from + left, node.to(), p));
+      return true;
+   }
+
+   // The mean and sum of squared errors of the features in a range of the ordering
+   private static ClusterTree node(double[] values, double[] weights, int[] order, int from, int to, int p) {
+      double[] mean = new double[p];
+      double totalWeight = 0;
+      for (int s = from; s < to; s++) {
+         int i = order[s];
+         double weight = weights == null ? 1 : weights[i];
+         for (int j = 0; j < p; j++) {
+            mean[j] += weight * values[i * p + j];
+         }
+         totalWeight += weight;
+      }
+      for (int j = 0; j < p; j++) {
+         mean[j] /= totalWeight;
+      }
+
+      double error = 0;
+      for (int s = from; s < to; s++) {
+         int i = order[s];
+         error += (weights == null ? 1 : weights[i]) * DistanceKernel.squaredEuclidean(mean, 0, values, i * p, p);
+      }
+      return new ClusterTree(order, from, to, mean, totalWeight, error);
+   }
+
+   // Totals the metrics of the 2-means iterations of a split
+   private static class SplitMetrics implements IterationListener {
+
+      private long distanceEvaluations;
+      private long updateTime;
+      private long assignmentTime;
+
+      void reset() {
+         distanceEvaluations = 0;
+         updateTime = 0;
+         assignmentTime = 0;
+      }
+
+      @Override
+      public void iterationCompleted(IterationEvent event) {
+         distanceEvaluations += event.getDistanceEvaluations();
+         updateTime += event.getUpdateTime();
+         assignmentTime += event.getAssignmentTime();
+      }
+   }
+
+   public DoubleMatrix2D getMeans() {
+      return means;
+   }
+
+   /**
+    * @return An immutable model assigning new features to the closest mean
+    */
+   public ClusterModel getModel() {
+      return model;
+   }
+
+   /**
+    * @return The hierarchy of splits, the leaves being the final clusters
+    */
+   public ClusterTree getTree() {
+      return tree;
+   }
+
+   /**
+    * @return The partition, built from the labels when first requested
+    */
+   @Override
+   public DoubleMatrix2D getPartition() {
+      if (partition == null && labels != null) {
+         partition = Labels.toPartition(labels, clusters);
+      }
+      return partition;
+   }
+
+   /**
+    * @return The cluster assigned to each feature
+    */
+   public int[] getLabels() {
+      return labels;
+   }
+
+   /**
+    * @return The weighted sum of squared distances from each feature to the
+    * mean of its leaf
+    */
+   @Override
+   public double getObjective() {
+      return objective;
+   }
+
+   @Override
+   public double evaluateObjective(DoubleMatrix2D data) {
+      return model.objective(data, 2);
+   }
+
+   public KMeans getKMeans() {
+      return kmeans;
+   }
+
+   /**
+    * @param kmeans Used for each split, with the Euclidean distance measure
+    */
+   public void setKMeans(KMeans kmeans) {
+      this.kmeans = kmeans;
+   }
+
+   public int getSplitTrials() {
+      return splitTrials;
+   }
+
+   /**
+    * @param splitTrials The number of 2-means run for each split, keeping the
+    * split with the lowest error
+    */
+   public void setSplitTrials(int splitTrials) {
+      this.splitTrials = splitTrials;
+   }
+
+   @Override
+   public RandomGenerator getRandomGenerator() {
+      return randomGenerator;
+   }
+
+   @Override
+   public void setRandomGenerator(RandomGenerator random) {
+      this.randomGenerator = random;
+   }
+
+   @Override
+   public IterationListener getIterationListener() {
+      return iterationListener;
+   }
+
+   /**
+    * @param iterationListener Notified after each split, with the metrics of
+    * its 2-means
+    */
+   @Override
+   public void setIterationListener(IterationListener iterationListener) {
+      this.iterationListener = iterationListener;
+   }
+}
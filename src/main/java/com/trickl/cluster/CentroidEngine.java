@@ -0,0 +1,332 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.doublealgo.Statistic.VectorVectorFunction;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The working state of the centroid based algorithms, held in contiguous
+ * row-major arrays so the inner loops run over primitives.
+ * The data is copied once and every buffer is allocated up front, so no
+ * further memory is allocated per row or per distance evaluation.
+ * For a hard partition the sum of each cluster is kept between updates and
+ * only adjusted for the features that changed cluster.
+ * Features may be weighted, a weight acting as that many copies of the feature.
+ * In single precision the features and the means used for distances are held
+ * as floats, halving the memory read per iteration, while the cluster sums and
+ * the reported means are still accumulated in double precision.
+ */
+final class CentroidEngine {
+
+   static final int CHUNK_SIZE = 1024;
+
+   // Bounds the number of partial sum buffers kept for a parallel mean update
+   private static final int MAX_PARTIAL_SUMS = 64;
+
+   // Beyond this fraction of moved features, summing every feature is cheaper
+   private static final int FULL_UPDATE_DIVISOR = 4;
+
+   final int n; // Number of features
+   final int p; // Dimensions of features
+   final int clusters;
+   final double[] data; // Null in single precision
+   final float[] floatData; // Null in double precision
+   final double[] centroids;
+   private final double[] weights; // Null when every feature has unit weight
+   final float[] floatCentroids; // Null in double precision
+   private final float[] previousFloatCentroids;
+   final double[] previousCentroids;
+   private final DistanceKernel distanceKernel;
+   private final ForkJoinPool forkJoinPool;
+   private final int sumChunkSize;
+
+   // The weighted sum of each cluster, followed by the sum of the weights
+   private final double[][] partialSums;
+   private final double[] clusterSums;
+
+   // The cluster of each feature included in the cluster sums
+   private final int[] summedLabels;
+   private boolean labelledSums = false;
+
+   CentroidEngine(DoubleMatrix2D data, int clusters, VectorVectorFunction distanceMeasure, ForkJoinPool forkJoinPool) {
+      this(data, clusters, distanceMeasure, forkJoinPool, false);
+   }
+
+   CentroidEngine(DoubleMatrix2D data, int clusters, VectorVectorFunction distanceMeasure, ForkJoinPool forkJoinPool,
+           boolean singlePrecision) {
+      this(data, null, clusters, distanceMeasure, forkJoinPool, singlePrecision);
+   }
+
+   /**
+    * @param weights The weight of each feature, or null for unit weights
+    */
+   CentroidEngine(DoubleMatrix2D data, double[] weights, int clusters, VectorVectorFunction distanceMeasure,
+           ForkJoinPool forkJoinPool, boolean singlePrecision) {
+      checkWeights(weights, data.rows());
+      this.weights = weights;
+      this.n = data.rows();
+      this.p = data.columns();
+      this.clusters = clusters;
+      this.data = singlePrecision ? null : new double[n * p];
+      this.floatData = singlePrecision ? new float[n * p] : null;
+      this.floatCentroids = singlePrecision ? new float[clusters * p] : null;
+      this.previousFloatCentroids = singlePrecision ? new float[clusters * p] : null;
+      this.centroids = new double[clusters * p];
+      this.previousCentroids = new double[clusters * p];
+      this.distanceKernel = DistanceKernel.forMeasure(distanceMeasure);
+      this.forkJoinPool = forkJoinPool;
+      // The chunks, and so the order of the sums, do not depend on the pool
+      this.sumChunkSize = Math.max(CHUNK_SIZE, (n + MAX_PARTIAL_SUMS - 1) / MAX_PARTIAL_SUMS);
+      this.partialSums = new double[Math.max(1, (n + sumChunkSize - 1) / sumChunkSize)][clusters * (p + 1)];
+      this.clusterSums = new double[clusters * (p + 1)];
+      this.summedLabels = new int[n];
+
+      for (int i = 0; i < n; i++) {
+         for (int j = 0; j < p; j++) {
+            if (singlePrecision) {
+               this.floatData[i * p + j] = (float) data.getQuick(i, j);
+            } else {
+               this.data[i * p + j] = data.getQuick(i, j);
+            }
+         }
+      }
+   }
+
+   /**
+    * @throws IllegalArgumentException Unless there is one finite, non-negative weight per feature
+    */
+   static void checkWeights(double[] weights, int n) {
+      if (weights == null) {
+         return;
+      }
+      if (weights.length != n) {
+         throw new IllegalArgumentException("Expected a weight for each of the " + n + " features.");
+      }
+      for (int i = 0; i < n; i++) {
+         if (!(weights[i] >= 0) || Double.isInfinite(weights[i])) {
+            throw new IllegalArgumentException("Weights must be finite and non-negative.");
+         }
+      }
+   }
+
+   /**
+    * @return The weight of feature i
+    */
+   double weight(int i) {
+      return weights == null ? 1 : weights[i];
+   }
+
+   /**
+    * @return The value of feature i in dimension j
+    */
+   double value(int i, int j) {
+      return floatData == null ? data[i * p + j] : floatData[i * p + j];
+   }
+
+   /**
+    * @return The mean of cluster k in dimension j, in the precision used for
+    * distances
+    */
+   double centroid(int k, int j) {
+      return floatCentroids == null ? centroids[k * p + j] : floatCentroids[k * p + j];
+   }
+
+   /**
+    * @return The distance from the mean of cluster k to the feature i
+    */
+   double distance(int i, int k) {
+      if (floatData == null) {
+         return distanceKernel.apply(centroids, k * p, data, i * p, p);
+      }
+      return distanceKernel.apply(floatCentroids, k * p, floatData, i * p, p);
+   }
+
+   /**
+    * @return The distance between the means of clusters k and l
+    */
+   double centroidDistance(int k, int l) {
+      if (floatCentroids != null) {
+         return distanceKernel.apply(floatCentroids, k * p, floatCentroids, l * p, p);
+      }
+      return distanceKernel.apply(centroids, k * p, centroids, l * p, p);
+   }
+
+   /**
+    * @return The distance the mean of cluster k moved in the last update
+    */
+   double centroidShift(int k) {
+      if (floatCentroids != null) {
+         return distanceKernel.apply(previousFloatCentroids, k * p, floatCentroids, k * p, p);
+      }
+      return distanceKernel.apply(previousCentroids, k * p, centroids, k * p, p);
+   }
+
+   /**
+    * Calculate the mean of each cluster of a hard partition.
+    * @param labels The cluster of each feature
+    */
+   void updateMeans(final int[] labels) {
+      int moved = 0;
+      if (labelledSums) {
+         for (int i = 0; i < n; i++) {
+            if (labels[i] != summedLabels[i]) {
+               moved++;
+            }
+         }
+      }
+
+      // Weights do not cancel exactly, so a cluster emptied of weighted features
+      // could be left with a residual weight
+      if (!labelledSums || weights != null || moved > n / FULL_UPDATE_DIVISOR) {
+         sumChunks(new RowChunks.ChunkFunction<Void>() {
+
+            @Override
+            public Void apply(int from, int to) {
+               double[] sums = clearSums(from);
+               for (int i = from; i < to; i++) {
+                  int offset = labels[i] * (p + 1);
+                  double weight = weight(i);
+                  addFeature(sums, offset, i, weight);
+                  sums[offset + p] += weight;
+               }
+               return null;
+            }
+         });
+      } else if (moved > 0) {
+         // Move each feature's contribution from its old cluster to its new one
+         for (int i = 0; i < n; i++) {
+            if (labels[i] != summedLabels[i]) {
+               int oldOffset = summedLabels[i] * (p + 1);
+               int newOffset = labels[i] * (p + 1);
+               addFeature(clusterSums, oldOffset, i, -1);
+               addFeature(clusterSums, newOffset, i, 1);
+               clusterSums[oldOffset + p] -= 1;
+               clusterSums[newOffset + p] += 1;
+            }
+         }
+
+         // Clear the rounding error left in a cluster that has emptied
+         for (int k = 0; k < clusters; k++) {
+            int offset = k * (p + 1);
+            if (clusterSums[offset + p] == 0) {
+               for (int j = 0; j < p; j++) {
+                  clusterSums[offset + j] = 0;
+               }
+            }
+         }
+      }
+
+      System.arraycopy(labels, 0, summedLabels, 0, n);
+      labelledSums = true;
+      divideSums();
+   }
+
+   /**
+    * Calculate the weighted mean of each cluster of a fuzzy partition.
+    * @param fuzzifiedMemberships The n x clusters row-major memberships of
+    * each feature, already raised to the fuzzification
+    */
+   void updateMeans(final double[] fuzzifiedMemberships) {
+      labelledSums = false;
+      sumChunks(new RowChunks.ChunkFunction<Void>() {
+
+         @Override
+         public Void apply(int from, int to) {
+            double[] sums = clearSums(from);
+            for (int i = from; i < to; i++) {
+               double weight = weight(i);
+               for (int k = 0; k < clusters; k++) {
+                  double Um = fuzzifiedMemberships[i * clusters + k] * weight;
+                  int offset = k * (p + 1);
+                  addFeature(sums, offset, i, Um);
+                  sums[offset + p] += Um;
+               }
+            }
+            return null;
+         }
+      });
+      divideSums();
+   }
+
+   /**
+    * Copy the means into a p x clusters matrix, one column per cluster.
+    */
+   void copyMeansTo(DoubleMatrix2D means) {
+      for (int k = 0; k < clusters; k++) {
+         for (int j = 0; j < p; j++) {
+            means.setQuick(j, k, centroids[k * p + j]);
+         }
+      }
+   }
+
+   // Add feature i, scaled by the weight, to the sums starting at the offset
+   private void addFeature(double[] sums, int offset, int i, double weight) {
+      if (floatData == null) {
+         for (int j = 0; j < p; j++) {
+            sums[offset + j] += data[i * p + j] * weight;
+         }
+      } else {
+         for (int j = 0; j < p; j++) {
+            sums[offset + j] += floatData[i * p + j] * weight;
+         }
+      }
+   }
+
+   private double[] clearSums(int from) {
+      double[] sums = partialSums[from / sumChunkSize];
+      for (int s = 0; s < sums.length; s++) {
+         sums[s] = 0;
+      }
+      return sums;
+   }
+
+   // Merge the partial sums in chunk order so the result is reproducible
+   private void sumChunks(RowChunks.ChunkFunction<Void> accumulate) {
+      RowChunks.map(forkJoinPool, n, sumChunkSize, accumulate);
+
+      System.arraycopy(partialSums[0], 0, clusterSums, 0, clusterSums.length);
+      for (int t = 1; t < partialSums.length; t++) {
+         double[] chunkSums = partialSums[t];
+         for (int s = 0; s < clusterSums.length; s++) {
+            clusterSums[s] += chunkSums[s];
+         }
+      }
+   }
+
+   private void divideSums() {
+      System.arraycopy(centroids, 0, previousCentroids, 0, centroids.length);
+      for (int k = 0; k < clusters; k++) {
+         int offset = k * (p + 1);
+         for (int j = 0; j < p; j++) {
+            centroids[k * p + j] = clusterSums[offset + j] / clusterSums[offset + p];
+         }
+      }
+
+      if (floatCentroids != null) {
+         System.arraycopy(floatCentroids, 0, previousFloatCentroids, 0, floatCentroids.length);
+         for (int s = 0; s < centroids.length; s++) {
+            floatCentroids[s] = (float) centroids[s];
+         }
+      }
+   }
+}
@@ -27,4 +27,12 @@ public interface ClusterAlgorithm {
    void cluster(DoubleMatrix2D data, int clusters);
 
    DoubleMatrix2D getPartition();
+
+   IterationListener getIterationListener();
+
+   /**
+    * @param iterationListener Notified after each iteration, or null to
+    * gather no metrics
+    */
+   void setIterationListener(IterationListener iterationListener);
 }
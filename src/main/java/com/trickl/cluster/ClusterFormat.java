@@ -0,0 +1,222 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.doublealgo.Statistic;
+import cern.colt.matrix.doublealgo.Statistic.VectorVectorFunction;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A versioned binary file format for cluster models and partitions.
+ * Each file starts with a 32 byte little-endian header: the magic number,
+ * the format version, the content type and the dimensions of the content.
+ * The values follow, little-endian and aligned to their size, so a partition
+ * is read as a view of the memory-mapped file without parsing or copying.
+ */
+public final class ClusterFormat {
+
+   static final int MAGIC = 0x534c4354; // "TCLS"
+   static final int VERSION = 1;
+   static final int HEADER_BYTES = 32;
+
+   private static final int MODEL = 1;
+   private static final int LABELS = 2;
+   private static final int MEMBERSHIPS = 3;
+
+   // Distance measures that can be identified in a file, any other is stored as zero
+   private static final VectorVectorFunction[] DISTANCE_MEASURES = new VectorVectorFunction[]{
+      null, Statistic.EUCLID, Statistic.MANHATTAN, Statistic.MAXIMUM};
+
+   private ClusterFormat() {
+   }
+
+   /**
+    * Write the prototypes of a model.
+    */
+   public static void writeModel(ClusterModel model, File file) throws IOException {
+      int clusters = model.getClusters();
+      int p = model.getDimensions();
+      ByteBuffer buffer = map(file, HEADER_BYTES + 8L * clusters * p);
+      writeHeader(buffer, MODEL, clusters, p);
+      int measure = 0;
+      for (int m = 1; m < DISTANCE_MEASURES.length; m++) {
+         if (DISTANCE_MEASURES[m] == model.getDistanceMeasure()) {
+            measure = m;
+         }
+      }
+      buffer.putInt(20, measure);
+      buffer.putDouble(24, model.fuzzification());
+      buffer.position(HEADER_BYTES);
+      buffer.asDoubleBuffer().put(model.prototypes());
+   }
+
+   /**
+    * Read a model written with a Colt distance measure.
+    */
+   public static ClusterModel readModel(File file) throws IOException {
+      return readModel(file, null);
+   }
+
+   /**
+    * @param distanceMeasure The distance measure of the model, or null to use the measure recorded in the file
+    */
+   public static ClusterModel readModel(File file, VectorVectorFunction distanceMeasure) throws IOException {
+      ByteBuffer buffer = read(file, MODEL);
+      int clusters = buffer.getInt(12);
+      int p = buffer.getInt(16);
+      if (distanceMeasure == null) {
+         int measure = buffer.getInt(20);
+         if (measure <= 0 || measure >= DISTANCE_MEASURES.length) {
+            throw new IOException("The model uses an unknown distance measure, which must be supplied.");
+         }
+         distanceMeasure = DISTANCE_MEASURES[measure];
+      }
+
+      checkLength(buffer, 8, (long) clusters * p);
+      double[] prototypes = new double[clusters * p];
+      buffer.position(HEADER_BYTES);
+      buffer.asDoubleBuffer().get(prototypes);
+      return new ClusterModel(prototypes, clusters, p, distanceMeasure, buffer.getDouble(24));
+   }
+
+   /**
+    * Write a hard partition as the cluster of each feature.
+    */
+   public static void writeLabels(int[] labels, int clusters, File file) throws IOException {
+      ByteBuffer buffer = map(file, HEADER_BYTES + 4L * labels.length);
+      writeHeader(buffer, LABELS, clusters, labels.length);
+      buffer.position(HEADER_BYTES);
+      buffer.asIntBuffer().put(labels);
+   }
+
+   /**
+    * Write a fuzzy partition as the membership of each feature in each cluster.
+    */
+   public static void writeMemberships(DoubleMatrix2D partition, File file) throws IOException {
+      int n = partition.rows();
+      int clusters = partition.columns();
+      ByteBuffer buffer = map(file, HEADER_BYTES + 8L * n * clusters);
+      writeHeader(buffer, MEMBERSHIPS, clusters, n);
+      buffer.position(HEADER_BYTES);
+      DoubleBuffer memberships = buffer.asDoubleBuffer();
+      if (partition instanceof MembershipMatrix) {
+         memberships.put(((MembershipMatrix) partition).elements());
+      } else {
+         for (int i = 0; i < n; i++) {
+            for (int k = 0; k < clusters; k++) {
+               memberships.put(partition.getQuick(i, k));
+            }
+         }
+      }
+   }
+
+   /**
+    * Read a partition as a view of the memory-mapped file.
+    */
+   public static MappedPartition readPartition(File file) throws IOException {
+      ByteBuffer buffer = read(file, 0);
+      int type = buffer.getInt(8);
+      int clusters = buffer.getInt(12);
+      int n = buffer.getInt(16);
+      buffer.position(HEADER_BYTES);
+      if (type == LABELS) {
+         checkLength(buffer, 4, n);
+         return new MappedPartition(n, clusters, buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer(), null);
+      } else if (type == MEMBERSHIPS) {
+         checkLength(buffer, 8, (long) n * clusters);
+         return new MappedPartition(n, clusters, null, buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer());
+      }
+      throw new IOException("The file does not hold a partition.");
+   }
+
+   private static void writeHeader(ByteBuffer buffer, int type, int clusters, int size) {
+      buffer.putInt(0, MAGIC);
+      buffer.putInt(4, VERSION);
+      buffer.putInt(8, type);
+      buffer.putInt(12, clusters);
+      buffer.putInt(16, size);
+      buffer.putInt(20, 0);
+      buffer.putLong(24, 0);
+   }
+
+   private static ByteBuffer map(File file, long bytes) throws IOException {
+      if (bytes > Integer.MAX_VALUE) {
+         throw new IllegalArgumentException("At most " + Integer.MAX_VALUE + " bytes can be mapped.");
+      }
+
+      RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+      try {
+         randomAccessFile.setLength(bytes);
+         MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+         return buffer.order(ByteOrder.LITTLE_ENDIAN);
+      } finally {
+         randomAccessFile.close();
+      }
+   }
+
+   // The mapping stays valid after the file is closed
+   private static ByteBuffer read(File file, int type) throws IOException {
+      RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+      ByteBuffer buffer;
+      try {
+         FileChannel channel = randomAccessFile.getChannel();
+         if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+            throw new IOException("The file is not a cluster file that can be mapped.");
+         }
+         buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+      } finally {
+         randomAccessFile.close();
+      }
+
+      if (buffer.getInt(0) != MAGIC) {
+         throw new IOException("The file is not a cluster file.");
+      }
+      if (buffer.getInt(4) < 1 || buffer.getInt(4) > VERSION) {
+         throw new IOException("Unsupported cluster file version " + buffer.getInt(4) + ".");
+      }
+      if (type != 0 && buffer.getInt(8) != type) {
+         throw new IOException("The file does not hold a cluster model.");
+      }
+      if (buffer.getInt(12) < 0 || buffer.getInt(16) < 0) {
+         throw new IOException("The file header has a negative size.");
+      }
+      return buffer;
+   }
+
+   // The count is a product of two non-negative ints, which cannot overflow a
+   // long until it is scaled by the element size
+   private static void checkLength(ByteBuffer buffer, int elementBytes, long count) throws IOException {
+      if (count > (buffer.capacity() - HEADER_BYTES) / elementBytes) {
+         throw new IOException("The file is shorter than its header declares.");
+      }
+      if (buffer.capacity() != HEADER_BYTES + elementBytes * count) {
+         throw new IOException("The file length does not match its header.");
+      }
+   }
+}
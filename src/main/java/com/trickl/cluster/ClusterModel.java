@@ -0,0 +1,218 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.doublealgo.Statistic.VectorVectorFunction;
+
+/**
+ * The prototypes of a clustering, used to assign new features to clusters.
+ * The model is immutable and may be shared between threads, no memory is
+ * allocated by a prediction, results are written to arrays owned by the caller.
+ * Features are given as row-major arrays, one row per feature.
+ */
+public final class ClusterModel {
+
+   private final int clusters;
+   private final int p; // Dimensions of features
+   private final double[] prototypes;
+   private final VectorVectorFunction distanceMeasure;
+   private final DistanceKernel distanceKernel;
+   private final double fuzzification;
+
+   /**
+    * @param prototypes The clusters x p row-major prototypes
+    * @param fuzzification The fuzzification used for memberships, or NaN for hard clusters
+    */
+   ClusterModel(double[] prototypes, int clusters, int p, VectorVectorFunction distanceMeasure, double fuzzification) {
+      this.clusters = clusters;
+      this.p = p;
+      this.prototypes = prototypes;
+      this.distanceMeasure = distanceMeasure;
+      this.distanceKernel = DistanceKernel.forMeasure(distanceMeasure);
+      this.fuzzification = fuzzification;
+   }
+
+   /**
+    * @param means The p x clusters means, one column per cluster
+    */
+   static ClusterModel fromMeans(DoubleMatrix2D means, VectorVectorFunction distanceMeasure, double fuzzification) {
+      int p = means.rows();
+      int clusters = means.columns();
+      double[] prototypes = new double[clusters * p];
+      for (int k = 0; k < clusters; k++) {
+         for (int j = 0; j < p; j++) {
+            prototypes[k * p + j] = means.getQuick(j, k);
+         }
+      }
+      return new ClusterModel(prototypes, clusters, p, distanceMeasure, fuzzification);
+   }
+
+   /**
+    * @return The clusters x p row-major prototypes, not a copy
+    */
+   double[] prototypes() {
+      return prototypes;
+   }
+
+   double fuzzification() {
+      return fuzzification;
+   }
+
+   public VectorVectorFunction getDistanceMeasure() {
+      return distanceMeasure;
+   }
+
+   public int getClusters() {
+      return clusters;
+   }
+
+   public int getDimensions() {
+      return p;
+   }
+
+   /**
+    * @return True if predicted memberships are fuzzy, false if each feature belongs to one cluster
+    */
+   public boolean isFuzzy() {
+      return !Double.isNaN(fuzzification);
+   }
+
+   /**
+    * @param point The feature
+    * @return The cluster with the closest prototype, ties going to the lowest cluster
+    */
+   public int predict(double[] point) {
+      checkDimensions(point.length, 1);
+      return closestCluster(point, 0);
+   }
+
+   /**
+    * @param points The row-major features
+    * @param labels Receives the cluster with the closest prototype to each feature
+    */
+   public void predictBatch(double[] points, int[] labels) {
+      checkDimensions(points.length, labels.length);
+      for (int i = 0; i < labels.length; i++) {
+         labels[i] = closestCluster(points, i * p);
+      }
+   }
+
+   /**
+    * For hard clusters the membership is 1 for the closest cluster and 0 otherwise.
+    * @param point The feature
+    * @param memberships Receives the membership of the feature in each cluster
+    */
+   public void predictMemberships(double[] point, double[] memberships) {
+      checkDimensions(point.length, 1);
+      if (memberships.length != clusters) {
+         throw new IllegalArgumentException("Expected memberships for " + clusters + " clusters.");
+      }
+      memberships(point, 0, memberships, 0);
+   }
+
+   /**
+    * @param points The row-major features
+    * @param memberships Receives the row-major membership of each feature in each cluster
+    */
+   public void predictMembershipsBatch(double[] points, double[] memberships) {
+      if (memberships.length % clusters != 0) {
+         throw new IllegalArgumentException("Expected memberships for " + clusters + " clusters.");
+      }
+      int rows = memberships.length / clusters;
+      checkDimensions(points.length, rows);
+      for (int i = 0; i < rows; i++) {
+         memberships(points, i * p, memberships, i * clusters);
+      }
+   }
+
+   /**
+    * @param data The features, one per row
+    * @param power The power each distance is raised to in the objective
+    * @return The sum over the features of the distance to the closest prototype,
+    * or for fuzzy clusters of the distance to every prototype weighted by the
+    * fuzzified membership
+    */
+   double objective(DoubleMatrix2D data, double power) {
+      if (data.columns() != p) {
+         throw new IllegalArgumentException("Expected features of " + p + " dimensions.");
+      }
+
+      double[] point = new double[p];
+      double[] memberships = new double[clusters];
+      double objective = 0;
+      for (int i = 0; i < data.rows(); i++) {
+         for (int j = 0; j < p; j++) {
+            point[j] = data.getQuick(i, j);
+         }
+
+         if (isFuzzy()) {
+            memberships(point, 0, memberships, 0);
+            for (int k = 0; k < clusters; k++) {
+               double distance = distanceKernel.apply(prototypes, k * p, point, 0, p);
+               objective += FuzzyMemberships.power(memberships[k], fuzzification) * Math.pow(distance, power);
+            }
+         } else {
+            int k = closestCluster(point, 0);
+            objective += Math.pow(distanceKernel.apply(prototypes, k * p, point, 0, p), power);
+         }
+      }
+      return objective;
+   }
+
+   private int closestCluster(double[] points, int offset) {
+      double minDistance = Double.MAX_VALUE;
+      int closestCluster = 0;
+      for (int k = 0; k < clusters; k++) {
+         double distance = distanceKernel.apply(prototypes, k * p, points, offset, p);
+         if (distance < minDistance) {
+            minDistance = distance;
+            closestCluster = k;
+         }
+      }
+      return closestCluster;
+   }
+
+   // The memberships are calculated in place, starting from the distances
+   private void memberships(double[] points, int offset, double[] memberships, int membershipOffset) {
+      if (!isFuzzy()) {
+         int closestCluster = closestCluster(points, offset);
+         for (int k = 0; k < clusters; k++) {
+            memberships[membershipOffset + k] = k == closestCluster ? 1 : 0;
+         }
+         return;
+      }
+
+      for (int k = 0; k < clusters; k++) {
+         memberships[membershipOffset + k] = distanceKernel.apply(prototypes, k * p, points, offset, p);
+      }
+
+      // The same update as FuzzyCMeans, so the training memberships are predicted
+      FuzzyMemberships.memberships(memberships, membershipOffset, memberships, membershipOffset, clusters,
+              fuzzification);
+   }
+
+   private void checkDimensions(int length, int rows) {
+      if (length != rows * p) {
+         throw new IllegalArgumentException("Expected " + rows + " features of " + p + " dimensions.");
+      }
+   }
+}
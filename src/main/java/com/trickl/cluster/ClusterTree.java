@@ -0,0 +1,120 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import java.util.Arrays;
+
+/**
+ * A node of a divisive cluster hierarchy, such as that built by the
+ * BisectingKMeans. The root holds every feature and each internal node is
+ * split between its two children, the leaves being the final clusters.
+ * The nodes share a single ordering of the features, each holding a
+ * contiguous range of it, so the whole tree takes O(n) memory.
+ */
+public class ClusterTree {
+
+   private final int[] order;
+   private final int from;
+   private final int to;
+   private final double[] mean;
+   private final double weight;
+   private final double objective;
+   private ClusterTree left;
+   private ClusterTree right;
+   private int label = -1;
+
+   ClusterTree(int[] order, int from, int to, double[] mean, double weight, double objective) {
+      this.order = order;
+      this.from = from;
+      this.to = to;
+      this.mean = mean;
+      this.weight = weight;
+      this.objective = objective;
+   }
+
+   void setChildren(ClusterTree left, ClusterTree right) {
+      this.left = left;
+      this.right = right;
+   }
+
+   void setLabel(int label) {
+      this.label = label;
+   }
+
+   int from() {
+      return from;
+   }
+
+   int to() {
+      return to;
+   }
+
+   /**
+    * @return The number of features in this cluster
+    */
+   public int getSize() {
+      return to - from;
+   }
+
+   /**
+    * @return The rows of the data in this cluster
+    */
+   public int[] getRows() {
+      return Arrays.copyOfRange(order, from, to);
+   }
+
+   public double[] getMean() {
+      return mean.clone();
+   }
+
+   /**
+    * @return The total weight of the features in this cluster
+    */
+   public double getWeight() {
+      return weight;
+   }
+
+   /**
+    * @return The weighted sum of squared distances from each feature to the mean
+    */
+   public double getObjective() {
+      return objective;
+   }
+
+   public boolean isLeaf() {
+      return left == null;
+   }
+
+   public ClusterTree getLeft() {
+      return left;
+   }
+
+   public ClusterTree getRight() {
+      return right;
+   }
+
+   /**
+    * @return The cluster of a leaf in the final partition, or -1 if split
+    */
+   public int getLabel() {
+      return label;
+   }
+}
@@ -0,0 +1,262 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
+import java.util.Arrays;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * A small weighted sample of the features that stands in for the data when
+ * clustering, so the clustering time depends on the coreset size, not on n.
+ * It is built in two passes over the data by sensitivity sampling with the
+ * mean of the data as the rough solution. Each feature is drawn with probability
+ * q = 1 / (2n) + d^z / (2 sum(d^z)), d being its distance from the mean, and
+ * weighted by 1 / (size * q). Features drawn more than once are merged.
+ * The guarantee is probabilistic and only holds for z = 2 and a large
+ * enough sample: with size of order (d k log k + log(1 / delta)) / epsilon^2,
+ * the coreset cost of every set of k prototypes Q lies, with probability at
+ * least 1 - delta, within epsilon / 2 (cost(Q) + cost(mean)) of its cost over
+ * the full data. The default size gives no such bound for any particular
+ * epsilon and k, so a smaller sample is only a heuristic.
+ * The objective of the clustered coreset can be compared with the objective
+ * of the same prototypes over the full data, at the cost of a third pass.
+ * See: Scalable k-Means Clustering via Lightweight Coresets
+ * Olivier Bachem, Mario Lucic and Andreas Krause, KDD 2018
+ */
+public class Coreset {
+
+   private int size = 2000;
+   private double objectivePower = 2;
+   private boolean evaluateObjective = true;
+   private RandomGenerator randomGenerator = new MersenneTwister();
+   private DoubleMatrix2D points;
+   private double[] weights;
+   private int[] rows;
+   private double coresetObjective = Double.NaN;
+   private double fullObjective = Double.NaN;
+
+   public Coreset() {
+   }
+
+   /**
+    * Sample the coreset of the data, the data itself if it has no more than size rows.
+    * @param data The features, one per row
+    */
+   public void build(DoubleMatrix2D data) {
+      int n = data.rows(); // Number of features
+      int p = data.columns(); // Dimensions of features
+
+      if (n <= size) {
+         rows = new int[n];
+         weights = new double[n];
+         for (int i = 0; i < n; i++) {
+            rows[i] = i;
+            weights[i] = 1;
+         }
+         points = data.copy();
+         return;
+      }
+
+      // The first pass finds the mean
+      double[] mean = new double[p];
+      for (int i = 0; i < n; i++) {
+         for (int j = 0; j < p; j++) {
+            mean[j] += data.getQuick(i, j);
+         }
+      }
+      for (int j = 0; j < p; j++) {
+         mean[j] /= n;
+      }
+
+      // The second finds the distance from the mean to each feature
+      double[] cumulativeCosts = new double[n];
+      double totalCost = 0;
+      for (int i = 0; i < n; i++) {
+         totalCost += cost(data, i, mean);
+         cumulativeCosts[i] = totalCost;
+      }
+
+      // Draw half of the probability uniformly and half in proportion to the cost
+      int[] samples = new int[size];
+      for (int s = 0; s < size; s++) {
+         if (totalCost == 0 || randomGenerator.nextBoolean()) {
+            samples[s] = randomGenerator.nextInt(n);
+         } else {
+            samples[s] = search(cumulativeCosts, randomGenerator.nextDouble() * totalCost);
+         }
+      }
+      Arrays.sort(samples);
+
+      int distinct = 0;
+      for (int s = 0; s < size; s++) {
+         if (s == 0 || samples[s] != samples[s - 1]) {
+            distinct++;
+         }
+      }
+
+      rows = new int[distinct];
+      weights = new double[distinct];
+      points = new DenseDoubleMatrix2D(distinct, p);
+      int r = -1;
+      for (int s = 0; s < size; s++) {
+         int i = samples[s];
+         if (s == 0 || i != samples[s - 1]) {
+            rows[++r] = i;
+            for (int j = 0; j < p; j++) {
+               points.setQuick(r, j, data.getQuick(i, j));
+            }
+         }
+
+         double probability = totalCost == 0 ? 1.0 / n : 0.5 / n + 0.5 * cost(data, i, mean) / totalCost;
+         weights[r] += 1 / (size * probability);
+      }
+   }
+
+   /**
+    * Build the coreset of the data and cluster it in place of the data.
+    * @param algorithm The algorithm to cluster the weighted coreset
+    * @param data The features, one per row
+    * @param clusters The number of clusters
+    */
+   public void cluster(WeightedClusterAlgorithm algorithm, DoubleMatrix2D data, int clusters) {
+      build(data);
+      algorithm.cluster(points, weights, clusters);
+      coresetObjective = algorithm.getObjective();
+      fullObjective = evaluateObjective ? algorithm.evaluateObjective(data) : Double.NaN;
+   }
+
+   // The distance from the mean to feature i, raised to the objective power
+   private double cost(DoubleMatrix2D data, int i, double[] mean) {
+      double distanceSquared = 0;
+      for (int j = 0; j < mean.length; j++) {
+         double difference = data.getQuick(i, j) - mean[j];
+         distanceSquared += difference * difference;
+      }
+      return objectivePower == 2 ? distanceSquared : Math.pow(distanceSquared, objectivePower / 2);
+   }
+
+   // The first index whose cumulative cost exceeds the threshold
+   private static int search(double[] cumulativeCosts, double threshold) {
+      int lower = 0;
+      int upper = cumulativeCosts.length - 1;
+      while (lower < upper) {
+         int middle = (lower + upper) >>> 1;
+         if (cumulativeCosts[middle] > threshold) {
+            upper = middle;
+         } else {
+            lower = middle + 1;
+         }
+      }
+      return lower;
+   }
+
+   /**
+    * @return The distinct features of the coreset, one per row
+    */
+   public DoubleMatrix2D getPoints() {
+      return points;
+   }
+
+   /**
+    * @return The weight of each feature of the coreset
+    */
+   public double[] getWeights() {
+      return weights;
+   }
+
+   /**
+    * @return The row of the data each feature of the coreset was taken from
+    */
+   public int[] getRows() {
+      return rows;
+   }
+
+   /**
+    * @return The weighted objective of the last clustering of the coreset
+    */
+   public double getCoresetObjective() {
+      return coresetObjective;
+   }
+
+   /**
+    * @return The objective of the same prototypes over the full data, or NaN if not evaluated
+    */
+   public double getFullObjective() {
+      return fullObjective;
+   }
+
+   /**
+    * @return The coreset objective relative to the full objective, which the
+    * coreset guarantees to be close to one with high probability
+    */
+   public double getObjectiveRatio() {
+      return coresetObjective / fullObjective;
+   }
+
+   public int getSize() {
+      return size;
+   }
+
+   /**
+    * @param size The number of features drawn, fewer distinct features may result
+    */
+   public void setSize(int size) {
+      if (size < 1) {
+         throw new IllegalArgumentException("The coreset must hold at least one feature.");
+      }
+      this.size = size;
+   }
+
+   public double getObjectivePower() {
+      return objectivePower;
+   }
+
+   /**
+    * @param objectivePower The power of the distances in the objective, 2 for
+    * KMeans and FuzzyCMeans, 1 for KMedoids
+    */
+   public void setObjectivePower(double objectivePower) {
+      this.objectivePower = objectivePower;
+   }
+
+   public boolean isEvaluateObjective() {
+      return evaluateObjective;
+   }
+
+   /**
+    * @param evaluateObjective If true the clustering is evaluated on the full data
+    * in a third pass, giving the full objective
+    */
+   public void setEvaluateObjective(boolean evaluateObjective) {
+      this.evaluateObjective = evaluateObjective;
+   }
+
+   public RandomGenerator getRandomGenerator() {
+      return randomGenerator;
+   }
+
+   public void setRandomGenerator(RandomGenerator randomGenerator) {
+      this.randomGenerator = randomGenerator;
+   }
+}
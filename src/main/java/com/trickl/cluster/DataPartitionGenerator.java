@@ -0,0 +1,45 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.doublealgo.Statistic.VectorVectorFunction;
+
+/**
+ * A partition generator that places the initial clusters using the data
+ * being clustered, rather than labelling the features at random.
+ * The clustering algorithm supplies either the features, with its distance
+ * measure, or for the kernel methods the kernel matrix before asking for each
+ * partition. The generator releases them once the partition is generated.
+ */
+public interface DataPartitionGenerator extends PartitionGenerator {
+
+   /**
+    * @param data The features to be clustered, one per row
+    * @param distanceMeasure The distance used by the clustering algorithm
+    */
+   void setData(DoubleMatrix2D data, VectorVectorFunction distanceMeasure);
+
+   /**
+    * @param kernel K = X * Xt
+    */
+   void setKernel(DoubleMatrix2D kernel);
+}
@@ -0,0 +1,246 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.doublealgo.Statistic;
+import cern.colt.matrix.doublealgo.Statistic.VectorVectorFunction;
+import cern.colt.matrix.impl.DenseDoubleMatrix1D;
+
+/**
+ * A distance measure evaluated directly on row-major arrays, avoiding the
+ * matrix views and function dispatch of a VectorVectorFunction.
+ * The common Colt measures have primitive implementations, any other measure
+ * is applied through reusable per-thread vectors.
+ * The primitive kernels keep four independent partial sums so that successive
+ * elements do not wait on the previous addition, results agree with Colt
+ * to within rounding.
+ */
+abstract class DistanceKernel {
+
+   static final DistanceKernel EUCLID = new DistanceKernel() {
+
+      @Override
+      double apply(double[] x, int xOffset, double[] y, int yOffset, int length) {
+         return Math.sqrt(squaredEuclidean(x, xOffset, y, yOffset, length));
+      }
+
+      @Override
+      double apply(float[] x, int xOffset, float[] y, int yOffset, int length) {
+         return Math.sqrt(squaredEuclidean(x, xOffset, y, yOffset, length));
+      }
+   };
+
+   static final DistanceKernel MANHATTAN = new DistanceKernel() {
+
+      @Override
+      double apply(double[] x, int xOffset, double[] y, int yOffset, int length) {
+         return manhattan(x, xOffset, y, yOffset, length);
+      }
+
+      @Override
+      double apply(float[] x, int xOffset, float[] y, int yOffset, int length) {
+         return manhattan(x, xOffset, y, yOffset, length);
+      }
+   };
+
+   static final DistanceKernel MAXIMUM = new DistanceKernel() {
+
+      @Override
+      double apply(double[] x, int xOffset, double[] y, int yOffset, int length) {
+         double max = 0;
+         for (int j = 0; j < length; j++) {
+            max = Math.max(max, Math.abs(x[xOffset + j] - y[yOffset + j]));
+         }
+         return max;
+      }
+
+      @Override
+      double apply(float[] x, int xOffset, float[] y, int yOffset, int length) {
+         double max = 0;
+         for (int j = 0; j < length; j++) {
+            max = Math.max(max, Math.abs((double) x[xOffset + j] - y[yOffset + j]));
+         }
+         return max;
+      }
+   };
+
+   /**
+    * @return The distance between x[xOffset, xOffset + length) and y[yOffset, yOffset + length)
+    */
+   abstract double apply(double[] x, int xOffset, double[] y, int yOffset, int length);
+
+   /**
+    * @return The distance between x[xOffset, xOffset + length) and y[yOffset, yOffset + length),
+    * accumulated in double precision
+    */
+   abstract double apply(float[] x, int xOffset, float[] y, int yOffset, int length);
+
+   static double squaredEuclidean(double[] x, int xOffset, double[] y, int yOffset, int length) {
+      double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+      int j = 0;
+      for (int unrolled = length & ~3; j < unrolled; j += 4) {
+         double d0 = x[xOffset + j] - y[yOffset + j];
+         double d1 = x[xOffset + j + 1] - y[yOffset + j + 1];
+         double d2 = x[xOffset + j + 2] - y[yOffset + j + 2];
+         double d3 = x[xOffset + j + 3] - y[yOffset + j + 3];
+         sum0 += d0 * d0;
+         sum1 += d1 * d1;
+         sum2 += d2 * d2;
+         sum3 += d3 * d3;
+      }
+      for (; j < length; j++) {
+         double d = x[xOffset + j] - y[yOffset + j];
+         sum0 += d * d;
+      }
+      return (sum0 + sum1) + (sum2 + sum3);
+   }
+
+   static double squaredEuclidean(float[] x, int xOffset, float[] y, int yOffset, int length) {
+      double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+      int j = 0;
+      for (int unrolled = length & ~3; j < unrolled; j += 4) {
+         double d0 = (double) x[xOffset + j] - y[yOffset + j];
+         double d1 = (double) x[xOffset + j + 1] - y[yOffset + j + 1];
+         double d2 = (double) x[xOffset + j + 2] - y[yOffset + j + 2];
+         double d3 = (double) x[xOffset + j + 3] - y[yOffset + j + 3];
+         sum0 += d0 * d0;
+         sum1 += d1 * d1;
+         sum2 += d2 * d2;
+         sum3 += d3 * d3;
+      }
+      for (; j < length; j++) {
+         double d = (double) x[xOffset + j] - y[yOffset + j];
+         sum0 += d * d;
+      }
+      return (sum0 + sum1) + (sum2 + sum3);
+   }
+
+   static double manhattan(double[] x, int xOffset, double[] y, int yOffset, int length) {
+      double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+      int j = 0;
+      for (int unrolled = length & ~3; j < unrolled; j += 4) {
+         sum0 += Math.abs(x[xOffset + j] - y[yOffset + j]);
+         sum1 += Math.abs(x[xOffset + j + 1] - y[yOffset + j + 1]);
+         sum2 += Math.abs(x[xOffset + j + 2] - y[yOffset + j + 2]);
+         sum3 += Math.abs(x[xOffset + j + 3] - y[yOffset + j + 3]);
+      }
+      for (; j < length; j++) {
+         sum0 += Math.abs(x[xOffset + j] - y[yOffset + j]);
+      }
+      return (sum0 + sum1) + (sum2 + sum3);
+   }
+
+   static double manhattan(float[] x, int xOffset, float[] y, int yOffset, int length) {
+      double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+      int j = 0;
+      for (int unrolled = length & ~3; j < unrolled; j += 4) {
+         sum0 += Math.abs((double) x[xOffset + j] - y[yOffset + j]);
+         sum1 += Math.abs((double) x[xOffset + j + 1] - y[yOffset + j + 1]);
+         sum2 += Math.abs((double) x[xOffset + j + 2] - y[yOffset + j + 2]);
+         sum3 += Math.abs((double) x[xOffset + j + 3] - y[yOffset + j + 3]);
+      }
+      for (; j < length; j++) {
+         sum0 += Math.abs((double) x[xOffset + j] - y[yOffset + j]);
+      }
+      return (sum0 + sum1) + (sum2 + sum3);
+   }
+
+   static double dot(double[] x, int xOffset, double[] y, int yOffset, int length) {
+      double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+      int j = 0;
+      for (int unrolled = length & ~3; j < unrolled; j += 4) {
+         sum0 += x[xOffset + j] * y[yOffset + j];
+         sum1 += x[xOffset + j + 1] * y[yOffset + j + 1];
+         sum2 += x[xOffset + j + 2] * y[yOffset + j + 2];
+         sum3 += x[xOffset + j + 3] * y[yOffset + j + 3];
+      }
+      for (; j < length; j++) {
+         sum0 += x[xOffset + j] * y[yOffset + j];
+      }
+      return (sum0 + sum1) + (sum2 + sum3);
+   }
+
+   static double dot(float[] x, int xOffset, float[] y, int yOffset, int length) {
+      double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+      int j = 0;
+      for (int unrolled = length & ~3; j < unrolled; j += 4) {
+         sum0 += (double) x[xOffset + j] * y[yOffset + j];
+         sum1 += (double) x[xOffset + j + 1] * y[yOffset + j + 1];
+         sum2 += (double) x[xOffset + j + 2] * y[yOffset + j + 2];
+         sum3 += (double) x[xOffset + j + 3] * y[yOffset + j + 3];
+      }
+      for (; j < length; j++) {
+         sum0 += (double) x[xOffset + j] * y[yOffset + j];
+      }
+      return (sum0 + sum1) + (sum2 + sum3);
+   }
+
+   static DistanceKernel forMeasure(VectorVectorFunction distanceMeasure) {
+      if (distanceMeasure == Statistic.EUCLID) {
+         return EUCLID;
+      } else if (distanceMeasure == Statistic.MANHATTAN) {
+         return MANHATTAN;
+      } else if (distanceMeasure == Statistic.MAXIMUM) {
+         return MAXIMUM;
+      }
+      return new FunctionKernel(distanceMeasure);
+   }
+
+   private static class FunctionKernel extends DistanceKernel {
+
+      private final VectorVectorFunction distanceMeasure;
+      private final ThreadLocal<DoubleMatrix1D[]> vectors = new ThreadLocal<DoubleMatrix1D[]>();
+
+      FunctionKernel(VectorVectorFunction distanceMeasure) {
+         this.distanceMeasure = distanceMeasure;
+      }
+
+      @Override
+      double apply(double[] x, int xOffset, double[] y, int yOffset, int length) {
+         DoubleMatrix1D[] pair = vectors(length);
+         for (int j = 0; j < length; j++) {
+            pair[0].setQuick(j, x[xOffset + j]);
+            pair[1].setQuick(j, y[yOffset + j]);
+         }
+         return distanceMeasure.apply(pair[0], pair[1]);
+      }
+
+      @Override
+      double apply(float[] x, int xOffset, float[] y, int yOffset, int length) {
+         DoubleMatrix1D[] pair = vectors(length);
+         for (int j = 0; j < length; j++) {
+            pair[0].setQuick(j, x[xOffset + j]);
+            pair[1].setQuick(j, y[yOffset + j]);
+         }
+         return distanceMeasure.apply(pair[0], pair[1]);
+      }
+
+      private DoubleMatrix1D[] vectors(int length) {
+         DoubleMatrix1D[] pair = vectors.get();
+         if (pair == null || pair[0].size() != length) {
+            pair = new DoubleMatrix1D[]{new DenseDoubleMatrix1D(length), new DenseDoubleMatrix1D(length)};
+            vectors.set(pair);
+         }
+         return pair;
+      }
+   }
+}
@@ -24,105 +24,167 @@ import cern.colt.matrix.DoubleMatrix2D;
 import cern.colt.matrix.doublealgo.Statistic;
 import cern.colt.matrix.doublealgo.Statistic.VectorVectorFunction;
 import cern.colt.matrix.impl.DenseDoubleMatrix2D;
-import cern.colt.matrix.impl.SparseDoubleMatrix2D;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import org.apache.commons.math3.random.MersenneTwister;
 import org.apache.commons.math3.random.RandomGenerator;
 
-public class FuzzyCMeans implements ClusterAlgorithm {
+public class FuzzyCMeans implements WeightedClusterAlgorithm {
 
    private DoubleMatrix2D means;
    private DoubleMatrix2D partition;
+   private ClusterModel model;
+   private double objective = Double.NaN;
    private double fuzzification = 2.0;
    private double epsilon = 1e-7;
    private int maxIterations = 1000;
    private RandomGenerator randomGenerator = new MersenneTwister();
    private PartitionGenerator partitionGenerator = new FuzzyRandomPartitionGenerator();
+   private IterationListener iterationListener;
    private VectorVectorFunction distanceMeasure = Statistic.EUCLID;
+   private boolean singlePrecision = false;
+   private boolean batchDistances = false;
+   private ForkJoinPool forkJoinPool;
 
    public FuzzyCMeans() {
    }
 
    @Override
    public void cluster(DoubleMatrix2D data, int clusters) {
+      cluster(data, null, clusters);
+   }
+
+   /**
+    * @param weights The weight of each feature, or null for unit weights
+    */
+   @Override
+   public void cluster(DoubleMatrix2D data, double[] weights, int clusters) {
       int n = data.rows(); // Number of features
       int p = data.columns(); // Dimensions of features
 
-      partition = new SparseDoubleMatrix2D(n, clusters);
+      MembershipMatrix membershipMatrix = new MembershipMatrix(n, clusters);
+      partition = membershipMatrix;
       partitionGenerator.setRandomGenerator(randomGenerator);
+      if (partitionGenerator instanceof DataPartitionGenerator) {
+         ((DataPartitionGenerator) partitionGenerator).setData(data, distanceMeasure);
+      }
       partitionGenerator.generate(partition);
 
-      means = new DenseDoubleMatrix2D(p, clusters);
+      // Work directly on the row-major memberships of the partition, and a
+      // distance matrix reused across iterations
+      final CentroidEngine engine = new CentroidEngine(data, weights, clusters, distanceMeasure, forkJoinPool, singlePrecision);
+      final double[] memberships = membershipMatrix.elements();
+      final double[] distances = new double[n * clusters];
+
+      // The memberships raised to the fuzzification, updated with the memberships
+      final double[] fuzzified = new double[n * clusters];
+      FuzzyMemberships.fuzzify(memberships, fuzzified, fuzzification);
+      if (batchDistances && distanceMeasure != Statistic.EUCLID) {
+         throw new IllegalStateException("Batch distances require the Euclidean distance measure.");
+      }
+      final BatchDistances batch = batchDistances ? new BatchDistances(engine) : null;
 
       // Begin the main loop of alternating optimization
       double stepSize = epsilon;
       for (int itr = 0; itr < maxIterations && stepSize >= epsilon; ++itr) {
          // Get new prototypes (v) for each cluster using weighted median
-         for (int k = 0; k < clusters; k++) {
+         long updateStart = iterationListener == null ? 0 : System.nanoTime();
+         engine.updateMeans(fuzzified);
 
-            for (int j = 0; j < p; j++) {
-               double sumWeight = 0;
-               double sumValue = 0;
+         // Calculate distance measure d, then the new partition matrix U
+         // for the same chunk of features
+         long assignmentStart = iterationListener == null ? 0 : System.nanoTime();
+         if (batch != null) {
+            batch.updateMeans();
+         }
+         List<Double> chunkSteps = RowChunks.map(forkJoinPool, n, CentroidEngine.CHUNK_SIZE,
+                 new RowChunks.ChunkFunction<Double>() {
 
-               for (int i = 0; i < n; i++) {
-                  double Um = Math.pow(partition.getQuick(i, k), fuzzification);
-                  sumWeight += Um;
-                  sumValue += data.getQuick(i, j) * Um;
+            @Override
+            public Double apply(int from, int to) {
+               int clusters = engine.clusters;
+               if (batch != null) {
+                  batch.distances(from, to, distances, from * clusters);
+               } else {
+                  for (int i = from; i < to; i++) {
+                     for (int k = 0; k < clusters; k++) {
+                        distances[i * clusters + k] = engine.distance(i, k);
+                     }
+                  }
                }
 
-               means.setQuick(j, k, sumValue / sumWeight);
+               // Exact analytic solution given by Lagrange multipliers
+               double chunkStep = 0;
+               for (int i = from; i < to; i++) {
+                  chunkStep = Math.max(chunkStep, FuzzyMemberships.update(distances, memberships, fuzzified,
+                          i * clusters, clusters, fuzzification));
+               }
+               return chunkStep;
             }
-         }
+         });
 
-         // Calculate distance measure d:
-         DoubleMatrix2D distances = new DenseDoubleMatrix2D(n, clusters);
-         for (int k = 0; k < clusters; k++) {
-            for (int i = 0; i < n; i++) {
-               // Euclidean distance calculation
-               double distance = distanceMeasure.apply(means.viewColumn(k), data.viewRow(i));
-               distances.setQuick(i, k, distance);
-            }
+         // Stepsize is max(delta(U))
+         stepSize = 0;
+         for (double chunkStep : chunkSteps) {
+            stepSize = Math.max(stepSize, chunkStep);
          }
 
-         // Get new partition matrix U:
-         stepSize = 0;
-         for (int k = 0; k < clusters; k++) {
-            for (int i = 0; i < n; i++) {
-               double u = 0;
+         if (iterationListener != null) {
+            long assignmentEnd = System.nanoTime();
+            iterationListener.iterationCompleted(new IterationEvent(this, itr,
+                    objective(fuzzified, distances, weights, clusters), -1, stepSize, (long) n * clusters,
+                    assignmentStart - updateStart, assignmentEnd - assignmentStart));
+         }
+      }
 
-               if (distances.getQuick(i, k) == 0) {
-                  // Handle this awkward case
-                  u = 1;
-               } else {
-                  double sum = 0;
-                  for (int j = 0; j < clusters; j++) {
-                     // Exact analytic solution given by Lagrange multipliers
-                     sum += Math.pow(distances.getQuick(i, k) / distances.getQuick(i, j),
-                                     1.0 / (fuzzification - 1.0));
-                  }
-                  u = 1 / sum;
-               }
+      means = new DenseDoubleMatrix2D(p, clusters);
+      engine.copyMeansTo(means);
 
-               double u0 = partition.getQuick(i, k);
-               partition.setQuick(i, k, u);
+      // The distances are to the final means, so give the objective J(U, V)
+      objective = objective(fuzzified, distances, weights, clusters);
+      model = ClusterModel.fromMeans(means, distanceMeasure, fuzzification);
+   }
 
-               // Stepsize is max(delta(U))
-               if (u - u0 > stepSize) {
-                  stepSize = u - u0;
-               }
-            }
-         }
+   // J = sum(w * u^m * d^2), with w the weight of each feature
+   private static double objective(double[] fuzzified, double[] distances, double[] weights, int clusters) {
+      double objective = 0;
+      for (int t = 0; t < fuzzified.length; t++) {
+         double weight = weights == null ? 1 : weights[t / clusters];
+         objective += weight * fuzzified[t] * distances[t] * distances[t];
       }
+      return objective;
    }
 
    public DoubleMatrix2D getMeans() {
       return means;
    }
 
+   /**
+    * @return An immutable model giving the memberships of new features in each cluster
+    */
+   public ClusterModel getModel() {
+      return model;
+   }
+
    @Override
    public DoubleMatrix2D getPartition() {
       return partition;
    }
 
+   /**
+    * @return The sum of squared distances from each feature to each mean,
+    * weighted by the fuzzified memberships and the feature weights
+    */
+   @Override
+   public double getObjective() {
+      return objective;
+   }
+
+   @Override
+   public double evaluateObjective(DoubleMatrix2D data) {
+      return model.objective(data, 2);
+   }
+
    public double getFuzzification() {
       return fuzzification;
    }
@@ -147,11 +209,69 @@ public class FuzzyCMeans implements ClusterAlgorithm {
       this.maxIterations = maxIterations;
    }
 
+   @Override
    public RandomGenerator getRandomGenerator() {
       return randomGenerator;
    }
 
+   @Override
    public void setRandomGenerator(RandomGenerator random) {
       this.randomGenerator = random;
    }
+
+   public PartitionGenerator getPartitionGenerator() {
+      return partitionGenerator;
+   }
+
+   public void setPartitionGenerator(PartitionGenerator partitionGenerator) {
+      this.partitionGenerator = partitionGenerator;
+   }
+
+   @Override
+   public IterationListener getIterationListener() {
+      return iterationListener;
+   }
+
+   @Override
+   public void setIterationListener(IterationListener iterationListener) {
+      this.iterationListener = iterationListener;
+   }
+
+   public boolean isSinglePrecision() {
+      return singlePrecision;
+   }
+
+   /**
+    * @param singlePrecision If true the features and means are held as floats
+    * while clustering, the sums that form the means are still accumulated in
+    * double precision
+    */
+   public void setSinglePrecision(boolean singlePrecision) {
+      this.singlePrecision = singlePrecision;
+   }
+
+   public ForkJoinPool getForkJoinPool() {
+      return forkJoinPool;
+   }
+
+   /**
+    * @param forkJoinPool The pool used to share the distances and mean updates
+    * across rows, or null to run on the calling thread
+    */
+   public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+      this.forkJoinPool = forkJoinPool;
+   }
+
+   public boolean isBatchDistances() {
+      return batchDistances;
+   }
+
+   /**
+    * @param batchDistances If true the Euclidean distances from each block of
+    * features to every mean are formed together as a tiled matrix product.
+    * Requires the Euclidean distance measure
+    */
+   public void setBatchDistances(boolean batchDistances) {
+      this.batchDistances = batchDistances;
+   }
 }
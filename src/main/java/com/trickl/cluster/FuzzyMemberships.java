@@ -0,0 +1,120 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+/**
+ * The fuzzy c-means membership update shared by FuzzyCMeans,
+ * KernelFuzzyCMeans and the fuzzy predictions of a ClusterModel. Each membership u = 1 / sum((d / d_j)^(1 / (m - 1)))
+ * is calculated as w / sum(w_j), where w = (d_min / d)^(1 / (m - 1)) is
+ * found once per distance. That takes O(k) powers per feature rather than
+ * O(k^2), and none at all for the common m = 2. Scaling by the closest
+ * distance keeps every w within (0, 1].
+ */
+final class FuzzyMemberships {
+
+   private FuzzyMemberships() {
+   }
+
+   /**
+    * Calculate the memberships of one feature from its distances to each
+    * prototype. A feature on a prototype belongs fully to that cluster.
+    * The distances and memberships may share an array and offset.
+    * @param distances The distances of the feature to each prototype
+    * @param distanceOffset The offset of the first distance
+    * @param memberships The memberships, written for each cluster
+    * @param membershipOffset The offset of the first membership
+    * @param clusters The number of clusters
+    * @param fuzzification The fuzzification m
+    */
+   static void memberships(double[] distances, int distanceOffset, double[] memberships, int membershipOffset,
+           int clusters, double fuzzification) {
+      double minDistance = distances[distanceOffset];
+      for (int k = 1; k < clusters; k++) {
+         minDistance = Math.min(minDistance, distances[distanceOffset + k]);
+      }
+
+      double sum = 0;
+      if (minDistance == 0) {
+         for (int k = 0; k < clusters; k++) {
+            memberships[membershipOffset + k] = distances[distanceOffset + k] == 0 ? 1 : 0;
+         }
+         return;
+      } else if (fuzzification == 2) {
+         for (int k = 0; k < clusters; k++) {
+            double weight = minDistance / distances[distanceOffset + k];
+            memberships[membershipOffset + k] = weight;
+            sum += weight;
+         }
+      } else {
+         double exponent = 1.0 / (fuzzification - 1.0);
+         for (int k = 0; k < clusters; k++) {
+            double weight = Math.pow(minDistance / distances[distanceOffset + k], exponent);
+            memberships[membershipOffset + k] = weight;
+            sum += weight;
+         }
+      }
+
+      double scale = 1 / sum;
+      for (int k = 0; k < clusters; k++) {
+         memberships[membershipOffset + k] *= scale;
+      }
+   }
+
+   /**
+    * Update the memberships of one feature from its distances to each prototype.
+    * @param distances The row-major distances of each feature to each prototype
+    * @param memberships The row-major memberships, updated in place
+    * @param fuzzified The row-major memberships raised to the fuzzification,
+    * updated in place
+    * @param offset The offset of the feature in each array
+    * @param clusters The number of clusters
+    * @param fuzzification The fuzzification m
+    * @return The largest increase in any membership of the feature
+    */
+   static double update(double[] distances, double[] memberships, double[] fuzzified, int offset, int clusters,
+           double fuzzification) {
+      // The new memberships are held in the fuzzified memberships until the
+      // step from the old memberships is known
+      memberships(distances, offset, fuzzified, offset, clusters, fuzzification);
+
+      double stepSize = 0;
+      for (int k = 0; k < clusters; k++) {
+         double u = fuzzified[offset + k];
+         stepSize = Math.max(stepSize, u - memberships[offset + k]);
+         memberships[offset + k] = u;
+         fuzzified[offset + k] = power(u, fuzzification);
+      }
+      return stepSize;
+   }
+
+   /**
+    * Raise every membership to the fuzzification.
+    */
+   static void fuzzify(double[] memberships, double[] fuzzified, double fuzzification) {
+      for (int t = 0; t < memberships.length; t++) {
+         fuzzified[t] = power(memberships[t], fuzzification);
+      }
+   }
+
+   static double power(double u, double fuzzification) {
+      return fuzzification == 2 ? u * u : Math.pow(u, fuzzification);
+   }
+}
@@ -34,18 +34,31 @@ public class FuzzyRandomPartitionGenerator implements PartitionGenerator {
 
    @Override
    public void generate(DoubleMatrix2D partition) {
+      int clusters = partition.columns();
+
+      // Write straight into a dense partition, otherwise a row at a time
+      boolean dense = partition instanceof MembershipMatrix;
+      double[] memberships = dense ? ((MembershipMatrix) partition).elements() : new double[clusters];
+
       for (int i = 0; i < partition.rows(); ++i) {
          // Randomise
+         int offset = dense ? i * clusters : 0;
          double sum = 0;
-         for (int k = 0; k < partition.columns(); ++k) {
+         for (int k = 0; k < clusters; ++k) {
             double u = randomGenerator.nextDouble();
-            partition.setQuick(i, k, u);
+            memberships[offset + k] = u;
             sum += u;
          }
 
          // Normalise the weights
-         for (int k = 0; k < partition.columns(); ++k) {
-            partition.setQuick(i, k, partition.getQuick(i, k) / sum);
+         for (int k = 0; k < clusters; ++k) {
+            memberships[offset + k] /= sum;
+         }
+
+         if (!dense) {
+            for (int k = 0; k < clusters; ++k) {
+               partition.setQuick(i, k, memberships[k]);
+            }
          }
       }
    }
@@ -25,7 +25,7 @@ import org.apache.commons.math3.distribution.UniformIntegerDistribution;
 import org.apache.commons.math3.random.MersenneTwister;
 import org.apache.commons.math3.random.RandomGenerator;
 
-public class HardRandomPartitionGenerator implements PartitionGenerator {
+public class HardRandomPartitionGenerator implements HardPartitionGenerator {
 
    private RandomGenerator randomGenerator;
 
@@ -35,16 +35,20 @@ public class HardRandomPartitionGenerator implements PartitionGenerator {
 
    @Override
    public void generate(DoubleMatrix2D partition) {
-      // Initialise U randomly
-      partition.assign(0);
+      int[] labels = new int[partition.rows()];
+      generateLabels(labels, partition.columns());
+      Labels.fill(partition, labels);
+   }
 
-      UniformIntegerDistribution uniform = new UniformIntegerDistribution(randomGenerator, 0, partition.columns() - 1);
+   @Override
+   public void generateLabels(int[] labels, int clusters) {
+      // Initialise U randomly
+      UniformIntegerDistribution uniform = new UniformIntegerDistribution(randomGenerator, 0, clusters - 1);
 
-      for (int i = 0; i < partition.rows(); ++i)
+      for (int i = 0; i < labels.length; ++i)
       {
          // Randomise
-         int k = uniform.sample();
-         partition.setQuick(i, k, 1);
+         labels[i] = uniform.sample();
       }
    }
 
@@ -0,0 +1,100 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import java.util.EventObject;
+
+/**
+ * Metrics for a single iteration of a clustering algorithm.
+ * Each iteration has an update phase, where the prototypes are recalculated,
+ * and an assignment phase, where the partition is recalculated.
+ */
+public class IterationEvent extends EventObject {
+
+   private static final long serialVersionUID = 1L;
+
+   private final int iteration;
+   private final double objective;
+   private final int changes;
+   private final double stepSize;
+   private final long distanceEvaluations;
+   private final long updateTime;
+   private final long assignmentTime;
+
+   /**
+    * @param source The clustering algorithm
+    * @param iteration The iteration, starting from zero
+    * @param objective The objective after the iteration, or NaN if unknown
+    * @param changes The number of features that changed cluster, or -1 if not
+    * tracked, as for a fuzzy partition
+    * @param stepSize The largest change in membership, or NaN for a hard
+    * partition
+    * @param distanceEvaluations The number of distances calculated
+    * @param updateTime Nanoseconds spent in the update phase
+    * @param assignmentTime Nanoseconds spent in the assignment phase
+    */
+   public IterationEvent(Object source, int iteration, double objective, int changes,
+           double stepSize, long distanceEvaluations, long updateTime, long assignmentTime) {
+      super(source);
+      this.iteration = iteration;
+      this.objective = objective;
+      this.changes = changes;
+      this.stepSize = stepSize;
+      this.distanceEvaluations = distanceEvaluations;
+      this.updateTime = updateTime;
+      this.assignmentTime = assignmentTime;
+   }
+
+   public int getIteration() {
+      return iteration;
+   }
+
+   public double getObjective() {
+      return objective;
+   }
+
+   public int getChanges() {
+      return changes;
+   }
+
+   public double getStepSize() {
+      return stepSize;
+   }
+
+   public long getDistanceEvaluations() {
+      return distanceEvaluations;
+   }
+
+   public long getUpdateTime() {
+      return updateTime;
+   }
+
+   public long getAssignmentTime() {
+      return assignmentTime;
+   }
+
+   @Override
+   public String toString() {
+      return "Iteration " + iteration + ": objective=" + objective + " changes=" + changes
+              + " stepSize=" + stepSize + " distances=" + distanceEvaluations
+              + " update=" + updateTime / 1000000 + "ms assignment=" + assignmentTime / 1000000 + "ms";
+   }
+}
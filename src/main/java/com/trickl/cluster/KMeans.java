@@ -24,100 +24,805 @@ import cern.colt.matrix.DoubleMatrix2D;
 import cern.colt.matrix.doublealgo.Statistic;
 import cern.colt.matrix.doublealgo.Statistic.VectorVectorFunction;
 import cern.colt.matrix.impl.DenseDoubleMatrix2D;
-import cern.colt.matrix.impl.SparseDoubleMatrix2D;
+import java.util.concurrent.ForkJoinPool;
 import org.apache.commons.math3.random.MersenneTwister;
 import org.apache.commons.math3.random.RandomGenerator;
 
-public class KMeans implements ClusterAlgorithm {
+/**
+ * Lloyd's algorithm, optionally accelerated with triangle inequality bounds.
+ * See: Using the Triangle Inequality to Accelerate k-Means
+ * Charles Elkan, ICML 2003
+ * Also See: Making k-means even faster
+ * Greg Hamerly, SIAM International Conference on Data Mining 2010
+ * Also See: An Efficient k-Means Clustering Algorithm: Analysis and Implementation
+ * Tapas Kanungo et al., IEEE Trans. Pattern Analysis and Machine Intelligence, 2002
+ * Also See: Yinyang K-Means: A Drop-In Replacement of the Classic K-Means with Consistent Speedup
+ * Yufei Ding et al., ICML 2015
+ */
+public class KMeans implements WeightedClusterAlgorithm {
+
+   /**
+    * The method used to assign each feature to its nearest mean.
+    * The accelerated methods produce the same partition as LLOYD.
+    * ELKAN and HAMERLY require the distance measure to satisfy the triangle
+    * inequality, FILTERING requires the Euclidean distance.
+    */
+   public enum Assignment {
+      /** Compute the distance to every mean on every iteration */
+      LLOYD,
+      /** Keep a lower bound per feature and mean, O(n*k) extra memory */
+      ELKAN,
+      /** Keep a single lower bound per feature, O(n) extra memory */
+      HAMERLY,
+      /** Filter the means down a kd-tree of the features, for low dimensional Euclidean data */
+      FILTERING,
+      /** Keep a lower bound per feature and group of means, O(n*groups) extra memory */
+      YINYANG
+   }
 
    private DoubleMatrix2D means;
    private DoubleMatrix2D partition;
+   private ClusterModel model;
+   private int[] labels;
+   private int clusters;
+   private double objective = Double.NaN;
    private int maxIterations = 1000;
    private RandomGenerator randomGenerator = new MersenneTwister();
    private PartitionGenerator partitionGenerator = new HardRandomPartitionGenerator();
    private VectorVectorFunction distanceMeasure = Statistic.EUCLID;
+   private Assignment assignment = Assignment.LLOYD;
+   private int meanGroups = 0;
+   private ForkJoinPool forkJoinPool;
+   private IterationListener iterationListener;
+   private boolean singlePrecision = false;
+   private boolean batchDistances = false;
 
    public KMeans() {
    }
 
    @Override
    public void cluster(DoubleMatrix2D data, int clusters) {
+      cluster(data, null, clusters);
+   }
+
+   /**
+    * @param weights The weight of each feature, or null for unit weights
+    */
+   @Override
+   public void cluster(DoubleMatrix2D data, double[] weights, int clusters) {
       int n = data.rows(); // Number of features
       int p = data.columns(); // Dimensions of features
 
-      partition = new SparseDoubleMatrix2D(n, clusters);
       partitionGenerator.setRandomGenerator(randomGenerator);
-      partitionGenerator.generate(partition);
+      if (partitionGenerator instanceof DataPartitionGenerator) {
+         ((DataPartitionGenerator) partitionGenerator).setData(data, distanceMeasure);
+      }
+
+      // Label each feature with its cluster in the initial partition
+      int[] labels = Labels.generate(partitionGenerator, n, clusters);
+
+      CentroidEngine engine = new CentroidEngine(data, weights, clusters, distanceMeasure, forkJoinPool, singlePrecision);
+      switch (assignment) {
+         case ELKAN:
+            clusterElkan(engine, labels);
+            break;
+         case HAMERLY:
+            clusterHamerly(engine, labels);
+            break;
+         case FILTERING:
+            clusterFiltering(engine, labels);
+            break;
+         case YINYANG:
+            clusterYinyang(engine, labels);
+            break;
+         default:
+            clusterLloyd(engine, labels);
+            break;
+      }
 
       means = new DenseDoubleMatrix2D(p, clusters);
+      engine.copyMeansTo(means);
+
+      objective = objective(engine, labels);
 
+      this.labels = labels;
+      this.clusters = clusters;
+      partition = null;
+      model = ClusterModel.fromMeans(means, distanceMeasure, Double.NaN);
+   }
+
+   /**
+    * Cluster the rows of a sparse matrix, such as TF-IDF vectors.
+    * The means are held densely, with their norms, so each distance costs
+    * one pass over the non-zeros of a row. Always uses the Lloyd assignment and
+    * the Euclidean distance, and the partition generator must not need the data.
+    */
+   public void cluster(SparseRows data, final int clusters) {
+      int n = data.rows(); // Number of features
+      int p = data.columns(); // Dimensions of features
+
+      if (partitionGenerator instanceof DataPartitionGenerator) {
+         throw new IllegalStateException("Sparse rows cannot be seeded from the data.");
+      }
+      if (distanceMeasure != Statistic.EUCLID) {
+         throw new IllegalStateException("Sparse rows require the Euclidean distance measure.");
+      }
+      partitionGenerator.setRandomGenerator(randomGenerator);
+      final int[] labels = Labels.generate(partitionGenerator, n, clusters);
+
+      final SparseCentroidEngine engine = new SparseCentroidEngine(data, clusters);
       boolean changedPartition = true;
 
       // Begin the main loop of alternating optimization
       for (int itr = 0; itr < maxIterations && changedPartition; ++itr) {
-         // Get new prototypes (v) for each cluster using weighted median
-         for (int k = 0; k < clusters; k++) {
+         long updateStart = iterationListener == null ? 0 : System.nanoTime();
+         engine.updateMeans(labels);
 
-            for (int j = 0; j < p; j++) {
-               double sumWeight = 0;
-               double sumValue = 0;
+         // Get new partition by finding the closest prototype to each feature
+         long assignmentStart = iterationListener == null ? 0 : System.nanoTime();
+         AssignmentCounts counts = assign(n, new RowChunks.ChunkFunction<AssignmentCounts>() {
+
+            @Override
+            public AssignmentCounts apply(int from, int to) {
+               AssignmentCounts counts = new AssignmentCounts();
+               counts.distanceEvaluations = (long) (to - from) * clusters;
+               double[] squaredDistances = new double[clusters];
+               for (int i = from; i < to; i++) {
+                  engine.squaredDistances(i, squaredDistances);
+                  double minDistance = Double.MAX_VALUE;
+                  int closestCluster = 0;
+
+                  for (int k = 0; k < clusters; k++) {
+                     if (squaredDistances[k] < minDistance) {
+                        minDistance = squaredDistances[k];
+                        closestCluster = k;
+                     }
+                  }
+
+                  if (labels[i] != closestCluster) {
+                     counts.changes++;
+                  }
+                  labels[i] = closestCluster;
+               }
+               return counts;
+            }
+         });
+         changedPartition = counts.changes > 0;
 
-               for (int i = 0; i < n; i++) {
-                  double Um = partition.getQuick(i, k);
-                  sumWeight += Um;
-                  sumValue += data.getQuick(i, j) * Um;
+         if (iterationListener != null) {
+            long assignmentEnd = System.nanoTime();
+            iterationListener.iterationCompleted(new IterationEvent(this, itr, objective(engine, labels),
+                    counts.changes, Double.NaN, counts.distanceEvaluations,
+                    assignmentStart - updateStart, assignmentEnd - assignmentStart));
+         }
+      }
+
+      means = new DenseDoubleMatrix2D(p, clusters);
+      engine.copyMeansTo(means);
+
+      objective = objective(engine, labels);
+
+      this.labels = labels;
+      this.clusters = clusters;
+      partition = null;
+      model = ClusterModel.fromMeans(means, Statistic.EUCLID, Double.NaN);
+   }
+
+   private void clusterLloyd(final CentroidEngine engine, final int[] labels) {
+      final int clusters = engine.clusters;
+      if (batchDistances && distanceMeasure != Statistic.EUCLID) {
+         throw new IllegalStateException("Batch distances require the Euclidean distance measure.");
+      }
+      final BatchDistances batch = batchDistances ? new BatchDistances(engine) : null;
+
+      // Scratch for the distances of each chunk of rows, reused by every iteration
+      final int chunkSize = CentroidEngine.CHUNK_SIZE;
+      final double[][] chunkDistances = new double[batch == null ? 0 : (engine.n + chunkSize - 1) / chunkSize][];
+      for (int chunk = 0; chunk < chunkDistances.length; chunk++) {
+         chunkDistances[chunk] = new double[(Math.min(engine.n, (chunk + 1) * chunkSize) - chunk * chunkSize) * clusters];
+      }
+
+      boolean changedPartition = true;
+
+      // Begin the main loop of alternating optimization
+      for (int itr = 0; itr < maxIterations && changedPartition; ++itr) {
+         long updateStart = iterationListener == null ? 0 : System.nanoTime();
+         engine.updateMeans(labels);
+         if (batch != null) {
+            batch.updateMeans();
+         }
+
+         // Get new partition by finding the closest prototype to each feature
+         long assignmentStart = iterationListener == null ? 0 : System.nanoTime();
+         AssignmentCounts counts = assign(engine.n, new RowChunks.ChunkFunction<AssignmentCounts>() {
+
+            @Override
+            public AssignmentCounts apply(int from, int to) {
+               AssignmentCounts counts = new AssignmentCounts();
+               counts.distanceEvaluations = (long) (to - from) * clusters;
+               double[] distances = null;
+               if (batch != null) {
+                  distances = chunkDistances[from / chunkSize];
+                  batch.distances(from, to, distances, 0);
                }
 
-               means.setQuick(j, k, sumValue / sumWeight);
+               for (int i = from; i < to; i++) {
+                  double minDistance = Double.MAX_VALUE;
+                  int closestCluster = 0;
+
+                  for (int k = 0; k < clusters; k++) {
+                     double distance = batch == null ? engine.distance(i, k) : distances[(i - from) * clusters + k];
+                     if (distance < minDistance) {
+                        minDistance = distance;
+                        closestCluster = k;
+                     }
+                  }
+
+                  if (labels[i] != closestCluster) {
+                     counts.changes++;
+                  }
+                  labels[i] = closestCluster;
+               }
+               return counts;
             }
+         });
+         changedPartition = counts.changes > 0;
+         fireIteration(engine, labels, itr, counts, updateStart, assignmentStart);
+      }
+   }
+
+   private void clusterElkan(final CentroidEngine engine, final int[] labels) {
+      final int n = engine.n;
+      final int clusters = engine.clusters;
+
+      // Bounds on the distance from each feature to its own mean (upper)
+      // and to every other mean (lower)
+      final double[] upperBounds = new double[n];
+      final double[] lowerBounds = new double[n * clusters];
+      final double[][] meanDistances = new double[clusters][clusters];
+      final double[] meanSeparations = new double[clusters];
+      final double[] meanShifts = new double[clusters];
+
+      boolean changedPartition = true;
+
+      // Begin the main loop of alternating optimization
+      for (int itr = 0; itr < maxIterations && changedPartition; ++itr) {
+         long updateStart = iterationListener == null ? 0 : System.nanoTime();
+         engine.updateMeans(labels);
+
+         if (itr == 0) {
+            // No bounds are known yet, so start with the exact distances
+            long assignmentStart = iterationListener == null ? 0 : System.nanoTime();
+            AssignmentCounts counts = assign(engine.n, new RowChunks.ChunkFunction<AssignmentCounts>() {
+
+               @Override
+               public AssignmentCounts apply(int from, int to) {
+                  AssignmentCounts counts = new AssignmentCounts();
+                  counts.distanceEvaluations = (long) (to - from) * clusters;
+                  for (int i = from; i < to; i++) {
+                     double minDistance = Double.MAX_VALUE;
+                     int closestCluster = 0;
+                     for (int k = 0; k < clusters; k++) {
+                        double distance = boundedDistance(engine, i, k);
+                        lowerBounds[i * clusters + k] = distance;
+                        if (distance < minDistance) {
+                           minDistance = distance;
+                           closestCluster = k;
+                        }
+                     }
+
+                     if (labels[i] != closestCluster) {
+                        counts.changes++;
+                     }
+                     labels[i] = closestCluster;
+                     upperBounds[i] = minDistance;
+                  }
+                  return counts;
+               }
+            });
+            changedPartition = counts.changes > 0;
+            fireIteration(engine, labels, itr, counts, updateStart, assignmentStart);
+            continue;
          }
 
-         // Calculate distance measure d:
-         DoubleMatrix2D distances = new DenseDoubleMatrix2D(n, clusters);
-         for (int k = 0; k < clusters; k++) {
-            for (int i = 0; i < n; i++) {
-               // Euclidean distance calculation
-               double distance = distanceMeasure.apply(means.viewColumn(k), data.viewRow(i));
-               distances.setQuick(i, k, distance);
+         long meanEvaluations = calculateMeanShifts(engine, meanShifts);
+         meanEvaluations += calculateMeanDistances(engine, meanDistances, meanSeparations);
+
+         long assignmentStart = iterationListener == null ? 0 : System.nanoTime();
+         AssignmentCounts counts = assign(engine.n, new RowChunks.ChunkFunction<AssignmentCounts>() {
+
+            @Override
+            public AssignmentCounts apply(int from, int to) {
+               AssignmentCounts counts = new AssignmentCounts();
+               for (int i = from; i < to; i++) {
+                  // Loosen the bounds by the distance each mean has moved
+                  for (int k = 0; k < clusters; k++) {
+                     lowerBounds[i * clusters + k] = Math.max(0, lowerBounds[i * clusters + k] - meanShifts[k]);
+                  }
+
+                  int closestCluster = labels[i];
+                  double upperBound = upperBounds[i] + meanShifts[closestCluster];
+                  upperBounds[i] = upperBound;
+
+                  // No other mean can be closer than the nearest neighbouring mean allows
+                  if (upperBound < meanSeparations[closestCluster]) {
+                     continue;
+                  }
+
+                  boolean tightBound = false;
+                  for (int k = 0; k < clusters; k++) {
+                     if (k == closestCluster
+                             || upperBound < lowerBounds[i * clusters + k]
+                             || upperBound < 0.5 * meanDistances[closestCluster][k]) {
+                        continue;
+                     }
+
+                     if (!tightBound) {
+                        upperBound = boundedDistance(engine, i, closestCluster);
+                        counts.distanceEvaluations++;
+                        lowerBounds[i * clusters + closestCluster] = upperBound;
+                        tightBound = true;
+
+                        if (upperBound < lowerBounds[i * clusters + k]
+                                || upperBound < 0.5 * meanDistances[closestCluster][k]) {
+                           continue;
+                        }
+                     }
+
+                     double distance = boundedDistance(engine, i, k);
+                     counts.distanceEvaluations++;
+                     lowerBounds[i * clusters + k] = distance;
+
+                     // Ties go to the lowest index, as in the exhaustive search
+                     if (distance < upperBound || (distance == upperBound && k < closestCluster)) {
+                        closestCluster = k;
+                        upperBound = distance;
+                     }
+                  }
+
+                  if (labels[i] != closestCluster) {
+                     counts.changes++;
+                  }
+                  labels[i] = closestCluster;
+                  upperBounds[i] = upperBound;
+               }
+               return counts;
+            }
+         });
+         counts.distanceEvaluations += meanEvaluations;
+         changedPartition = counts.changes > 0;
+         fireIteration(engine, labels, itr, counts, updateStart, assignmentStart);
+      }
+   }
+
+   private void clusterHamerly(final CentroidEngine engine, final int[] labels) {
+      final int n = engine.n;
+      final int clusters = engine.clusters;
+
+      // Bounds on the distance from each feature to its own mean (upper)
+      // and to the second closest mean (lower)
+      final double[] upperBounds = new double[n];
+      final double[] lowerBounds = new double[n];
+      final double[][] meanDistances = new double[clusters][clusters];
+      final double[] meanSeparations = new double[clusters];
+      final double[] meanShifts = new double[clusters];
+
+      boolean changedPartition = true;
+
+      // Begin the main loop of alternating optimization
+      for (int itr = 0; itr < maxIterations && changedPartition; ++itr) {
+         long updateStart = iterationListener == null ? 0 : System.nanoTime();
+         engine.updateMeans(labels);
+
+         final boolean exhaustive = itr == 0;
+         int largestShiftCluster = 0;
+         double secondLargestShift = 0;
+         long meanEvaluations = 0;
+         if (!exhaustive) {
+            meanEvaluations += calculateMeanShifts(engine, meanShifts);
+            for (int k = 1; k < clusters; k++) {
+               if (meanShifts[k] > meanShifts[largestShiftCluster]) {
+                  largestShiftCluster = k;
+               }
+            }
+
+            for (int k = 0; k < clusters; k++) {
+               if (k != largestShiftCluster && meanShifts[k] > secondLargestShift) {
+                  secondLargestShift = meanShifts[k];
+               }
             }
+
+            meanEvaluations += calculateMeanDistances(engine, meanDistances, meanSeparations);
          }
 
-         // Get new partition matrix U:
-         changedPartition = false;
-         for (int i = 0; i < n; i++) {
-            double minDistance = Double.MAX_VALUE;
-            int closestCluster = 0;
+         final int furthestMovedCluster = largestShiftCluster;
+         final double largestShift = meanShifts[largestShiftCluster];
+         final double nextLargestShift = secondLargestShift;
+         long assignmentStart = iterationListener == null ? 0 : System.nanoTime();
+         AssignmentCounts counts = assign(engine.n, new RowChunks.ChunkFunction<AssignmentCounts>() {
+
+            @Override
+            public AssignmentCounts apply(int from, int to) {
+               AssignmentCounts counts = new AssignmentCounts();
+               for (int i = from; i < to; i++) {
+                  int closestCluster = labels[i];
+                  if (!exhaustive) {
+                     // Loosen the bounds by the distance each mean has moved
+                     upperBounds[i] += meanShifts[closestCluster];
+                     lowerBounds[i] -= closestCluster == furthestMovedCluster
+                             ? nextLargestShift : largestShift;
+
+                     double bound = Math.max(lowerBounds[i], meanSeparations[closestCluster]);
+                     if (upperBounds[i] < bound) {
+                        continue;
+                     }
+
+                     upperBounds[i] = boundedDistance(engine, i, closestCluster);
+                     counts.distanceEvaluations++;
+                     if (upperBounds[i] < bound) {
+                        continue;
+                     }
+                  }
+
+                  // Search all the means, keeping the second closest as the lower bound
+                  double minDistance = Double.MAX_VALUE;
+                  double secondMinDistance = Double.MAX_VALUE;
+                  closestCluster = 0;
+                  counts.distanceEvaluations += clusters;
+                  for (int k = 0; k < clusters; k++) {
+                     double distance = boundedDistance(engine, i, k);
+                     if (distance < minDistance) {
+                        secondMinDistance = minDistance;
+                        minDistance = distance;
+                        closestCluster = k;
+                     } else if (distance < secondMinDistance) {
+                        secondMinDistance = distance;
+                     }
+                  }
+
+                  if (labels[i] != closestCluster) {
+                     counts.changes++;
+                  }
+                  labels[i] = closestCluster;
+                  upperBounds[i] = minDistance;
+                  lowerBounds[i] = secondMinDistance;
+               }
+               return counts;
+            }
+         });
+         counts.distanceEvaluations += meanEvaluations;
+         changedPartition = counts.changes > 0;
+         fireIteration(engine, labels, itr, counts, updateStart, assignmentStart);
+      }
+   }
+
+   private void clusterFiltering(CentroidEngine engine, int[] labels) {
+      if (distanceMeasure != Statistic.EUCLID) {
+         throw new IllegalStateException("Filtering requires the Euclidean distance measure.");
+      }
+
+      // The tree is built once, only the means change between iterations
+      KdTree kdTree = new KdTree(engine);
+
+      boolean changedPartition = true;
+
+      // Begin the main loop of alternating optimization
+      for (int itr = 0; itr < maxIterations && changedPartition; ++itr) {
+         long updateStart = iterationListener == null ? 0 : System.nanoTime();
+         engine.updateMeans(labels);
+
+         long assignmentStart = iterationListener == null ? 0 : System.nanoTime();
+         AssignmentCounts counts = new AssignmentCounts();
+         kdTree.assign(engine, labels, counts);
+         changedPartition = counts.changes > 0;
+         fireIteration(engine, labels, itr, counts, updateStart, assignmentStart);
+      }
+   }
+
+   private void clusterYinyang(final CentroidEngine engine, final int[] labels) {
+      final int n = engine.n;
+      final int clusters = engine.clusters;
+      final int groups = Math.max(1, Math.min(clusters, meanGroups > 0 ? meanGroups : clusters / 10));
+
+      // Bounds on the distance from each feature to its own mean (upper)
+      // and to every other mean in each group (lower)
+      final double[] upperBounds = new double[n];
+      final double[] lowerBounds = new double[n * groups];
+      final double[] meanShifts = new double[clusters];
+      final double[] groupShifts = new double[groups];
+      final int[] meanGroup = new int[clusters];
+      final int[][] groupMembers = new int[groups][];
+
+      boolean changedPartition = true;
+
+      // Begin the main loop of alternating optimization
+      for (int itr = 0; itr < maxIterations && changedPartition; ++itr) {
+         long updateStart = iterationListener == null ? 0 : System.nanoTime();
+         engine.updateMeans(labels);
 
+         final boolean exhaustive = itr == 0;
+         long meanEvaluations = 0;
+         if (exhaustive) {
+            groupMeans(engine, groups, meanGroup, groupMembers);
+         } else {
+            meanEvaluations += calculateMeanShifts(engine, meanShifts);
+            for (int g = 0; g < groups; g++) {
+               groupShifts[g] = 0;
+            }
             for (int k = 0; k < clusters; k++) {
-               // U = 1 for the closest prototype
-               // U = 0 otherwise
+               groupShifts[meanGroup[k]] = Math.max(groupShifts[meanGroup[k]], meanShifts[k]);
+            }
+         }
+
+         long assignmentStart = iterationListener == null ? 0 : System.nanoTime();
+         AssignmentCounts counts = assign(engine.n, new RowChunks.ChunkFunction<AssignmentCounts>() {
 
-               if (distances.getQuick(i, k) < minDistance) {
-                  minDistance = distances.getQuick(i, k);
-                  closestCluster = k;
+            @Override
+            public AssignmentCounts apply(int from, int to) {
+               // The closest and second closest distance found in each group
+               double[] groupMinDistances = new double[groups];
+               double[] groupSecondMinDistances = new double[groups];
+               boolean[] searchedGroups = new boolean[groups];
+
+               AssignmentCounts counts = new AssignmentCounts();
+               for (int i = from; i < to; i++) {
+                  int assignedCluster = labels[i];
+                  double upperBound = Double.MAX_VALUE;
+                  double globalLowerBound = Double.MAX_VALUE;
+                  if (!exhaustive) {
+                     // Loosen the bounds by the distance the means have moved
+                     upperBound = upperBounds[i] + meanShifts[assignedCluster];
+                     for (int g = 0; g < groups; g++) {
+                        lowerBounds[i * groups + g] -= groupShifts[g];
+                        globalLowerBound = Math.min(globalLowerBound, lowerBounds[i * groups + g]);
+                     }
+
+                     if (upperBound < globalLowerBound) {
+                        upperBounds[i] = upperBound;
+                        continue;
+                     }
+
+                     upperBound = boundedDistance(engine, i, assignedCluster);
+                     counts.distanceEvaluations++;
+                     upperBounds[i] = upperBound;
+                     if (upperBound < globalLowerBound) {
+                        continue;
+                     }
+                  }
+
+                  // Search every group that might hold a closer mean
+                  int closestCluster = assignedCluster;
+                  double minDistance = upperBound;
+                  for (int g = 0; g < groups; g++) {
+                     searchedGroups[g] = false;
+                     if (!exhaustive && minDistance < lowerBounds[i * groups + g]) {
+                        continue;
+                     }
+
+                     searchedGroups[g] = true;
+                     groupMinDistances[g] = Double.POSITIVE_INFINITY;
+                     groupSecondMinDistances[g] = Double.POSITIVE_INFINITY;
+                     for (int k : groupMembers[g]) {
+                        double distance = upperBound;
+                        if (exhaustive || k != assignedCluster) {
+                           distance = boundedDistance(engine, i, k);
+                           counts.distanceEvaluations++;
+                        }
+                        if (distance < groupMinDistances[g]) {
+                           groupSecondMinDistances[g] = groupMinDistances[g];
+                           groupMinDistances[g] = distance;
+                        } else if (distance < groupSecondMinDistances[g]) {
+                           groupSecondMinDistances[g] = distance;
+                        }
+
+                        // Ties go to the lowest index, as in the exhaustive search
+                        if (distance < minDistance || (distance == minDistance && k < closestCluster)) {
+                           minDistance = distance;
+                           closestCluster = k;
+                        }
+                     }
+                  }
+
+                  // The lower bound of a group excludes the mean the feature belongs to
+                  for (int g = 0; g < groups; g++) {
+                     if (searchedGroups[g]) {
+                        lowerBounds[i * groups + g] = g == meanGroup[closestCluster]
+                                ? groupSecondMinDistances[g] : groupMinDistances[g];
+                     }
+                  }
+
+                  if (!exhaustive && closestCluster != assignedCluster && !searchedGroups[meanGroup[assignedCluster]]) {
+                     int g = meanGroup[assignedCluster];
+                     lowerBounds[i * groups + g] = Math.min(lowerBounds[i * groups + g], upperBound);
+                  }
+
+                  if (labels[i] != closestCluster) {
+                     counts.changes++;
+                  }
+                  labels[i] = closestCluster;
+                  upperBounds[i] = minDistance;
                }
+               return counts;
             }
+         });
+         counts.distanceEvaluations += meanEvaluations;
+         changedPartition = counts.changes > 0;
+         fireIteration(engine, labels, itr, counts, updateStart, assignmentStart);
+      }
+   }
 
-            if (partition.getQuick(i, closestCluster) == 0) {
-               changedPartition = true;
+   // Group the means by clustering them with a few Lloyd iterations, seeded
+   // with the first mean of each group
+   private static void groupMeans(CentroidEngine engine, int groups, int[] meanGroup, int[][] groupMembers) {
+      int clusters = engine.clusters;
+      int p = engine.p;
+      double[] centroids = engine.centroids;
+      double[] groupCentres = new double[groups * p];
+      int[] groupSizes = new int[groups];
+      System.arraycopy(centroids, 0, groupCentres, 0, groups * p);
 
-               for (int k = 0; k < clusters; k++) {
-                  partition.setQuick(i, k, (k == closestCluster) ? 1 : 0);
+      for (int itr = 0; itr < 5; ++itr) {
+         for (int k = 0; k < clusters; k++) {
+            double minDistanceSquared = Double.MAX_VALUE;
+            meanGroup[k] = 0;
+            for (int g = 0; g < groups; g++) {
+               double distanceSquared = 0;
+               for (int j = 0; j < p; j++) {
+                  double difference = centroids[k * p + j] - groupCentres[g * p + j];
+                  distanceSquared += difference * difference;
+               }
+               if (distanceSquared < minDistanceSquared) {
+                  minDistanceSquared = distanceSquared;
+                  meanGroup[k] = g;
                }
             }
          }
+
+         for (int g = 0; g < groups; g++) {
+            groupSizes[g] = 0;
+            for (int j = 0; j < p; j++) {
+               groupCentres[g * p + j] = 0;
+            }
+         }
+         for (int k = 0; k < clusters; k++) {
+            groupSizes[meanGroup[k]]++;
+            for (int j = 0; j < p; j++) {
+               groupCentres[meanGroup[k] * p + j] += centroids[k * p + j];
+            }
+         }
+         for (int g = 0; g < groups; g++) {
+            for (int j = 0; j < p; j++) {
+               groupCentres[g * p + j] /= groupSizes[g];
+            }
+         }
+      }
+
+      for (int g = 0; g < groups; g++) {
+         groupMembers[g] = new int[groupSizes[g]];
+         groupSizes[g] = 0;
+      }
+      for (int k = 0; k < clusters; k++) {
+         groupMembers[meanGroup[k]][groupSizes[meanGroup[k]]++] = k;
+      }
+   }
+
+   private AssignmentCounts assign(int n, RowChunks.ChunkFunction<AssignmentCounts> assignment) {
+      AssignmentCounts counts = new AssignmentCounts();
+      for (AssignmentCounts chunkCounts : RowChunks.map(forkJoinPool, n, CentroidEngine.CHUNK_SIZE, assignment)) {
+         counts.add(chunkCounts);
+      }
+      return counts;
+   }
+
+   private void fireIteration(CentroidEngine engine, int[] labels, int iteration, AssignmentCounts counts,
+           long updateStart, long assignmentStart) {
+      if (iterationListener != null) {
+         long assignmentEnd = System.nanoTime();
+         iterationListener.iterationCompleted(new IterationEvent(this, iteration, objective(engine, labels),
+                 counts.changes, Double.NaN, counts.distanceEvaluations,
+                 assignmentStart - updateStart, assignmentEnd - assignmentStart));
+      }
+   }
+
+   // The weighted sum of squared distances from each feature to its mean
+   private static double objective(CentroidEngine engine, int[] labels) {
+      double objective = 0;
+      for (int i = 0; i < engine.n; i++) {
+         double distance = engine.distance(i, labels[i]);
+         objective += engine.weight(i) * distance * distance;
+      }
+      return objective;
+   }
+
+   private static double objective(SparseCentroidEngine engine, int[] labels) {
+      double objective = 0;
+      for (int i = 0; i < engine.n; i++) {
+         objective += engine.squaredDistance(i, labels[i]);
+      }
+      return objective;
+   }
+
+   private long calculateMeanShifts(CentroidEngine engine, double[] meanShifts) {
+      for (int k = 0; k < engine.clusters; k++) {
+         // An empty cluster has no mean to move
+         double meanShift = engine.centroidShift(k);
+         meanShifts[k] = Double.isNaN(meanShift) ? 0 : meanShift;
+      }
+      return engine.clusters;
+   }
+
+   // Half the distance to the nearest other mean bounds the region in which
+   // a feature is certain to be closest to its own mean
+   private long calculateMeanDistances(CentroidEngine engine, double[][] meanDistances, double[] meanSeparations) {
+      int clusters = engine.clusters;
+      for (int k = 0; k < clusters; k++) {
+         meanSeparations[k] = Double.MAX_VALUE;
+      }
+
+      for (int k = 0; k < clusters; k++) {
+         for (int l = k + 1; l < clusters; l++) {
+            double distance = engine.centroidDistance(k, l);
+            if (Double.isNaN(distance)) {
+               distance = Double.POSITIVE_INFINITY;
+            }
+            meanDistances[k][l] = distance;
+            meanDistances[l][k] = distance;
+            meanSeparations[k] = Math.min(meanSeparations[k], 0.5 * distance);
+            meanSeparations[l] = Math.min(meanSeparations[l], 0.5 * distance);
+         }
       }
+      return (long) clusters * (clusters - 1) / 2;
+   }
+
+   // The mean of an empty cluster is undefined and can never be the closest,
+   // which keeps the bounds valid when treated as infinitely far away
+   private static double boundedDistance(CentroidEngine engine, int i, int k) {
+      double distance = engine.distance(i, k);
+      return Double.isNaN(distance) ? Double.POSITIVE_INFINITY : distance;
    }
 
    public DoubleMatrix2D getMeans() {
       return means;
    }
 
+   /**
+    * @return An immutable model assigning new features to the closest mean
+    */
+   public ClusterModel getModel() {
+      return model;
+   }
+
+   /**
+    * @return The partition, built from the labels when first requested
+    */
    @Override
    public DoubleMatrix2D getPartition() {
+      if (partition == null && labels != null) {
+         partition = Labels.toPartition(labels, clusters);
+      }
       return partition;
    }
 
+   /**
+    * @return The cluster assigned to each feature
+    */
+   public int[] getLabels() {
+      return labels;
+   }
+
+   /**
+    * @return The weighted sum of squared distances from each feature to its mean
+    */
+   @Override
+   public double getObjective() {
+      return objective;
+   }
+
+   @Override
+   public double evaluateObjective(DoubleMatrix2D data) {
+      return model.objective(data, 2);
+   }
+
    public int getMaxIterations() {
       return maxIterations;
    }
@@ -126,14 +831,24 @@ public class KMeans implements ClusterAlgorithm {
       this.maxIterations = maxIterations;
    }
 
+   @Override
    public RandomGenerator getRandomGenerator() {
       return randomGenerator;
    }
 
+   @Override
    public void setRandomGenerator(RandomGenerator random) {
       this.randomGenerator = random;
    }
 
+   public PartitionGenerator getPartitionGenerator() {
+      return partitionGenerator;
+   }
+
+   public void setPartitionGenerator(PartitionGenerator partitionGenerator) {
+      this.partitionGenerator = partitionGenerator;
+   }
+
    public VectorVectorFunction getDistanceMeasure() {
       return distanceMeasure;
    }
@@ -141,4 +856,73 @@ public class KMeans implements ClusterAlgorithm {
    public void setDistanceMeasure(VectorVectorFunction distanceMeasure) {
       this.distanceMeasure = distanceMeasure;
    }
+
+   public Assignment getAssignment() {
+      return assignment;
+   }
+
+   public void setAssignment(Assignment assignment) {
+      this.assignment = assignment;
+   }
+
+   public ForkJoinPool getForkJoinPool() {
+      return forkJoinPool;
+   }
+
+   /**
+    * @param forkJoinPool The pool used to share the work across rows, or null
+    * to run on the calling thread
+    */
+   public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+      this.forkJoinPool = forkJoinPool;
+   }
+
+   public int getMeanGroups() {
+      return meanGroups;
+   }
+
+   /**
+    * @param meanGroups The number of groups of means used by the YINYANG
+    * assignment, or zero to use one group for every ten means
+    */
+   public void setMeanGroups(int meanGroups) {
+      this.meanGroups = meanGroups;
+   }
+
+   @Override
+   public IterationListener getIterationListener() {
+      return iterationListener;
+   }
+
+   @Override
+   public void setIterationListener(IterationListener iterationListener) {
+      this.iterationListener = iterationListener;
+   }
+
+   public boolean isSinglePrecision() {
+      return singlePrecision;
+   }
+
+   /**
+    * @param singlePrecision If true the features and means are held as floats
+    * while clustering, the sums that form the means are still accumulated in
+    * double precision
+    */
+   public void setSinglePrecision(boolean singlePrecision) {
+      this.singlePrecision = singlePrecision;
+   }
+
+   public boolean isBatchDistances() {
+      return batchDistances;
+   }
+
+   /**
+    * @param batchDistances If true the Euclidean distances from each block of
+    * features to every mean are formed together as a tiled matrix product in the
+    * LLOYD assignment, the other assignments evaluate too few distances to
+    * benefit. Requires the Euclidean distance measure
+    */
+   public void setBatchDistances(boolean batchDistances) {
+      this.batchDistances = batchDistances;
+   }
 }
@@ -0,0 +1,211 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.list.IntArrayList;
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.doublealgo.Statistic.VectorVectorFunction;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.apache.commons.math3.distribution.UniformIntegerDistribution;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * The scalable variant of k-means++ seeding, also known as k-means||.
+ * Rather than choosing one seed per pass over the data, each round samples
+ * many candidates independently, so a round can be shared across threads.
+ * The candidates are then weighted by the number of features closest to them
+ * and reduced to the final seeds with weighted k-means++.
+ * See: Scalable K-Means++
+ * Bahman Bahmani et al., VLDB 2012
+ */
+public class KMeansParallelPartitionGenerator implements DataPartitionGenerator, HardPartitionGenerator {
+
+   private static final int CHUNK_SIZE = 1024;
+
+   private RandomGenerator randomGenerator;
+   private double oversampling = 2.0;
+   private int rounds = 5;
+   private ForkJoinPool forkJoinPool;
+   private SeedDistances distances;
+
+   public KMeansParallelPartitionGenerator() {
+      randomGenerator = new MersenneTwister();
+   }
+
+   @Override
+   public void generate(DoubleMatrix2D partition) {
+      int[] labels = new int[partition.rows()];
+      generateLabels(labels, partition.columns());
+      Labels.fill(partition, labels);
+   }
+
+   @Override
+   public void generateLabels(int[] labels, int clusters) {
+      if (distances == null) {
+         throw new IllegalStateException("The data must be set before generating a partition.");
+      }
+      if (labels.length != distances.size()) {
+         throw new IllegalArgumentException("Expected " + distances.size() + " labels, not " + labels.length + ".");
+      }
+
+      // Release the copy of the data once this partition is generated
+      final SeedDistances distances = this.distances;
+      this.distances = null;
+
+      final int n = distances.size();
+
+      // The squared distance from each feature to its closest candidate
+      final double[] minDistances = new double[n];
+      final int[] closestCandidates = new int[n];
+      final IntArrayList candidates = new IntArrayList();
+
+      UniformIntegerDistribution uniform = new UniformIntegerDistribution(randomGenerator, 0, n - 1);
+      candidates.add(uniform.sample());
+      for (int i = 0; i < n; ++i) {
+         minDistances[i] = distances.distanceSquared(i, candidates.getQuick(0));
+      }
+
+      for (int round = 0; round < rounds; ++round) {
+         double cost = 0;
+         for (int i = 0; i < n; ++i) {
+            cost += minDistances[i];
+         }
+
+         if (cost == 0) {
+            break;
+         }
+
+         // Each chunk samples from its own generator, seeded in chunk order,
+         // so the candidates do not depend on the number of threads
+         final double samplingFactor = oversampling * clusters / cost;
+         final long[] chunkSeeds = new long[(n + CHUNK_SIZE - 1) / CHUNK_SIZE];
+         for (int t = 0; t < chunkSeeds.length; ++t) {
+            chunkSeeds[t] = randomGenerator.nextLong();
+         }
+
+         List<IntArrayList> sampled = RowChunks.map(forkJoinPool, n, CHUNK_SIZE, new RowChunks.ChunkFunction<IntArrayList>() {
+
+            @Override
+            public IntArrayList apply(int from, int to) {
+               IntArrayList chunkCandidates = new IntArrayList();
+               RandomGenerator chunkRandom = new MersenneTwister(chunkSeeds[from / CHUNK_SIZE]);
+               for (int i = from; i < to; ++i) {
+                  if (chunkRandom.nextDouble() < samplingFactor * minDistances[i]) {
+                     chunkCandidates.add(i);
+                  }
+               }
+               return chunkCandidates;
+            }
+         });
+
+         final int firstNewCandidate = candidates.size();
+         for (IntArrayList chunkCandidates : sampled) {
+            candidates.addAllOf(chunkCandidates);
+         }
+
+         RowChunks.map(forkJoinPool, n, CHUNK_SIZE, new RowChunks.ChunkFunction<Void>() {
+
+            @Override
+            public Void apply(int from, int to) {
+               for (int i = from; i < to; ++i) {
+                  for (int c = firstNewCandidate; c < candidates.size(); ++c) {
+                     double distance = distances.distanceSquared(i, candidates.getQuick(c));
+                     if (distance < minDistances[i]) {
+                        minDistances[i] = distance;
+                        closestCandidates[i] = c;
+                     }
+                  }
+               }
+               return null;
+            }
+         });
+      }
+
+      // Too few candidates to choose from, so seed from every feature
+      if (candidates.size() < clusters) {
+         candidates.clear();
+         for (int i = 0; i < n; ++i) {
+            candidates.add(i);
+            closestCandidates[i] = i;
+         }
+      }
+
+      // Weight each candidate by the number of features closest to it
+      double[] weights = new double[candidates.size()];
+      for (int i = 0; i < n; ++i) {
+         weights[closestCandidates[i]] += 1;
+      }
+
+      int[] candidateFeatures = new int[candidates.size()];
+      System.arraycopy(candidates.elements(), 0, candidateFeatures, 0, candidates.size());
+      int[] seeds = KMeansPlusPlusPartitionGenerator.chooseSeeds(distances, candidateFeatures, weights, clusters, randomGenerator);
+      distances.assignToSeeds(labels, seeds);
+   }
+
+   @Override
+   public void setData(DoubleMatrix2D data, VectorVectorFunction distanceMeasure) {
+      distances = SeedDistances.forData(data, distanceMeasure);
+   }
+
+   @Override
+   public void setKernel(DoubleMatrix2D kernel) {
+      distances = SeedDistances.forKernel(kernel);
+   }
+
+   public RandomGenerator getRandomGenerator() {
+      return randomGenerator;
+   }
+
+   @Override
+   public void setRandomGenerator(RandomGenerator random) {
+      this.randomGenerator = random;
+   }
+
+   public double getOversampling() {
+      return oversampling;
+   }
+
+   /**
+    * @param oversampling The expected number of candidates sampled per round,
+    * as a multiple of the number of clusters
+    */
+   public void setOversampling(double oversampling) {
+      this.oversampling = oversampling;
+   }
+
+   public int getRounds() {
+      return rounds;
+   }
+
+   public void setRounds(int rounds) {
+      this.rounds = rounds;
+   }
+
+   public ForkJoinPool getForkJoinPool() {
+      return forkJoinPool;
+   }
+
+   public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+      this.forkJoinPool = forkJoinPool;
+   }
+}
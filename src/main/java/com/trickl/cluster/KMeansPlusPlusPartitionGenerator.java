@@ -0,0 +1,158 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.doublealgo.Statistic.VectorVectorFunction;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * Chooses well spread seeds, each picked with probability proportional to its
+ * squared distance from the seeds chosen so far, and assigns every feature to
+ * its closest seed.
+ * See: k-means++: The Advantages of Careful Seeding
+ * David Arthur and Sergei Vassilvitskii, SODA 2007
+ */
+public class KMeansPlusPlusPartitionGenerator implements DataPartitionGenerator, HardPartitionGenerator {
+
+   private RandomGenerator randomGenerator;
+   private SeedDistances distances;
+
+   public KMeansPlusPlusPartitionGenerator() {
+      randomGenerator = new MersenneTwister();
+   }
+
+   @Override
+   public void generate(DoubleMatrix2D partition) {
+      int[] labels = new int[partition.rows()];
+      generateLabels(labels, partition.columns());
+      Labels.fill(partition, labels);
+   }
+
+   @Override
+   public void generateLabels(int[] labels, int clusters) {
+      if (distances == null) {
+         throw new IllegalStateException("The data must be set before generating a partition.");
+      }
+      if (labels.length != distances.size()) {
+         throw new IllegalArgumentException("Expected " + distances.size() + " labels, not " + labels.length + ".");
+      }
+
+      // Release the copy of the data once this partition is generated
+      final SeedDistances distances = this.distances;
+      this.distances = null;
+
+      int n = distances.size();
+      int[] candidates = new int[n];
+      double[] weights = new double[n];
+      for (int i = 0; i < n; ++i) {
+         candidates[i] = i;
+         weights[i] = 1;
+      }
+
+      int[] seeds = chooseSeeds(distances, candidates, weights, clusters, randomGenerator);
+      distances.assignToSeeds(labels, seeds);
+   }
+
+   /**
+    * Weighted D^2 seeding over a subset of the features.
+    * @param distances The squared distances between features
+    * @param candidates The features that may be chosen as seeds
+    * @param weights The weight of each candidate
+    * @param clusters The number of seeds to choose
+    * @param randomGenerator The source of randomness
+    * @return The chosen features
+    */
+   static int[] chooseSeeds(SeedDistances distances, int[] candidates, double[] weights, int clusters, RandomGenerator randomGenerator) {
+      int[] seeds = new int[clusters];
+
+      // The first seed is chosen in proportion to weight alone
+      double totalWeight = 0;
+      for (int c = 0; c < candidates.length; ++c) {
+         totalWeight += weights[c];
+      }
+      seeds[0] = candidates[sample(weights, totalWeight, randomGenerator)];
+
+      double[] minDistances = new double[candidates.length];
+      double[] scores = new double[candidates.length];
+      for (int c = 0; c < candidates.length; ++c) {
+         minDistances[c] = distances.distanceSquared(candidates[c], seeds[0]);
+      }
+
+      for (int k = 1; k < clusters; ++k) {
+         double totalScore = 0;
+         for (int c = 0; c < candidates.length; ++c) {
+            scores[c] = weights[c] * minDistances[c];
+            totalScore += scores[c];
+         }
+
+         // Every candidate already coincides with a seed
+         if (totalScore == 0) {
+            seeds[k] = candidates[sample(weights, totalWeight, randomGenerator)];
+         } else {
+            seeds[k] = candidates[sample(scores, totalScore, randomGenerator)];
+         }
+
+         for (int c = 0; c < candidates.length; ++c) {
+            minDistances[c] = Math.min(minDistances[c], distances.distanceSquared(candidates[c], seeds[k]));
+         }
+      }
+
+      return seeds;
+   }
+
+   // Roulette wheel selection
+   private static int sample(double[] scores, double totalScore, RandomGenerator randomGenerator) {
+      double threshold = randomGenerator.nextDouble() * totalScore;
+      double cumulativeScore = 0;
+      int last = 0;
+      for (int c = 0; c < scores.length; ++c) {
+         if (scores[c] > 0) {
+            cumulativeScore += scores[c];
+            last = c;
+            if (cumulativeScore > threshold) {
+               return c;
+            }
+         }
+      }
+      return last;
+   }
+
+   @Override
+   public void setData(DoubleMatrix2D data, VectorVectorFunction distanceMeasure) {
+      distances = SeedDistances.forData(data, distanceMeasure);
+   }
+
+   @Override
+   public void setKernel(DoubleMatrix2D kernel) {
+      distances = SeedDistances.forKernel(kernel);
+   }
+
+   public RandomGenerator getRandomGenerator() {
+      return randomGenerator;
+   }
+
+   @Override
+   public void setRandomGenerator(RandomGenerator random) {
+      this.randomGenerator = random;
+   }
+}
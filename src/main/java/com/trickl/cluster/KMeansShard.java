@@ -0,0 +1,253 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.doublealgo.Statistic;
+import cern.colt.matrix.doublealgo.Statistic.VectorVectorFunction;
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+
+/**
+ * A worker of the ShardedKMeans, holding a shard of the rows and their
+ * assignments. Each iteration it assigns its rows to the closest of the
+ * coordinator's means and returns the partial sums of the rows in each
+ * cluster, from which the coordinator calculates the next means.
+ */
+public class KMeansShard {
+
+   private final double[] values;
+   private final int rows;
+   private final int columns;
+   private final DistanceKernel distanceKernel;
+   private int[] labels;
+
+   public KMeansShard(DoubleMatrix2D data) {
+      this(data, Statistic.EUCLID);
+   }
+
+   /**
+    * @param data The rows of this shard
+    * @param distanceMeasure The distance used to assign rows to means
+    */
+   public KMeansShard(DoubleMatrix2D data, VectorVectorFunction distanceMeasure) {
+      this.rows = data.rows();
+      this.columns = data.columns();
+      this.distanceKernel = DistanceKernel.forMeasure(distanceMeasure);
+      this.values = new double[rows * columns];
+      for (int i = 0; i < rows; i++) {
+         for (int j = 0; j < columns; j++) {
+            values[i * columns + j] = data.getQuick(i, j);
+         }
+      }
+      this.labels = new int[rows];
+   }
+
+   /**
+    * Read a block of rows from a file of packed big-endian doubles, the
+    * default format of OutOfCoreKMeans.
+    * @param file A file of packed rows
+    * @param columns The dimensions of each row
+    * @param firstRow The first row of the shard
+    * @param rows The number of rows in the shard
+    */
+   public static KMeansShard read(File file, int columns, long firstRow, int rows) throws IOException {
+      RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+      try {
+         randomAccessFile.seek(firstRow * columns * 8);
+         DataInputStream in = new DataInputStream(new BufferedInputStream(
+                 Channels.newInputStream(randomAccessFile.getChannel())));
+         DoubleMatrix2D data = new DenseDoubleMatrix2D(rows, columns);
+         for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+               data.setQuick(i, j, in.readDouble());
+            }
+         }
+         return new KMeansShard(data);
+      } finally {
+         randomAccessFile.close();
+      }
+   }
+
+   public int rows() {
+      return rows;
+   }
+
+   public int columns() {
+      return columns;
+   }
+
+   /**
+    * Start from a given partition of the rows.
+    * @param labels The initial cluster of each row
+    * @param clusters The number of clusters
+    * @return The sums of the rows in each cluster
+    */
+   public PartialSums initialize(int[] labels, int clusters) {
+      if (labels.length != rows) {
+         throw new IllegalArgumentException("Expected " + rows + " labels, not " + labels.length + ".");
+      }
+
+      for (int i = 0; i < rows; ++i) {
+         if (labels[i] < 0 || labels[i] >= clusters) {
+            throw new IllegalArgumentException("Label " + labels[i] + " is not a cluster.");
+         }
+      }
+
+      this.labels = labels.clone();
+      PartialSums partialSums = new PartialSums(clusters, columns);
+      for (int i = 0; i < rows; ++i) {
+         partialSums.addRow(this.labels[i], values, i * columns);
+      }
+      return partialSums;
+   }
+
+   /**
+    * Assign each row to its closest mean.
+    * @param centroids The clusters x columns row-major means
+    * @param clusters The number of clusters
+    * @return The sums of the rows in each cluster of the new partition
+    */
+   public PartialSums assign(double[] centroids, int clusters) {
+      if (centroids.length != clusters * columns) {
+         throw new IllegalArgumentException("Expected " + clusters * columns + " centroid values, not "
+                 + centroids.length + ".");
+      }
+
+      PartialSums partialSums = new PartialSums(clusters, columns);
+      for (int i = 0; i < rows; ++i) {
+         int offset = i * columns;
+         double minDistance = Double.MAX_VALUE;
+         int closestCluster = 0;
+         for (int k = 0; k < clusters; ++k) {
+            double distance = distanceKernel.apply(centroids, k * columns, values, offset, columns);
+            if (distance < minDistance) {
+               minDistance = distance;
+               closestCluster = k;
+            }
+         }
+
+         partialSums.objective += minDistance * minDistance;
+         if (labels[i] != closestCluster) {
+            partialSums.changes++;
+         }
+         labels[i] = closestCluster;
+         partialSums.addRow(closestCluster, values, offset);
+      }
+      return partialSums;
+   }
+
+   /**
+    * @return The cluster assigned to each row
+    */
+   public int[] getLabels() {
+      return labels;
+   }
+
+   /**
+    * The per-cluster sums of a shard's rows, with the count of rows in each
+    * cluster, the objective of the shard and the number of rows that changed
+    * cluster.
+    */
+   public static class PartialSums {
+
+      private final int clusters;
+      private final int columns;
+      // Sums of the rows in each cluster, followed by the cluster size
+      private final double[] sums;
+      private double objective;
+      private int changes;
+
+      public PartialSums(int clusters, int columns) {
+         this(clusters, columns, new double[clusters * (columns + 1)], 0, 0);
+      }
+
+      /**
+       * @param clusters The number of clusters
+       * @param columns The dimensions of each row
+       * @param sums For each cluster the sum of each column, followed by the count
+       * @param objective The sum of the squared distances to the closest means
+       * @param changes The number of rows that changed cluster
+       */
+      public PartialSums(int clusters, int columns, double[] sums, double objective, int changes) {
+         if (sums.length != clusters * (columns + 1)) {
+            throw new IllegalArgumentException("Expected " + clusters * (columns + 1) + " sums, not "
+                    + sums.length + ".");
+         }
+         this.clusters = clusters;
+         this.columns = columns;
+         this.sums = sums;
+         this.objective = objective;
+         this.changes = changes;
+      }
+
+      private void addRow(int k, double[] values, int offset) {
+         int sumOffset = k * (columns + 1);
+         for (int j = 0; j < columns; ++j) {
+            sums[sumOffset + j] += values[offset + j];
+         }
+         sums[sumOffset + columns] += 1;
+      }
+
+      /**
+       * Add the sums of another shard to these.
+       */
+      public void merge(PartialSums other) {
+         if (other.clusters != clusters || other.columns != columns) {
+            throw new IllegalArgumentException("Partial sums of different shapes cannot be merged.");
+         }
+         for (int s = 0; s < sums.length; ++s) {
+            sums[s] += other.sums[s];
+         }
+         objective += other.objective;
+         changes += other.changes;
+      }
+
+      public int getClusters() {
+         return clusters;
+      }
+
+      public int getColumns() {
+         return columns;
+      }
+
+      public double[] getSums() {
+         return sums;
+      }
+
+      public double getCount(int k) {
+         return sums[k * (columns + 1) + columns];
+      }
+
+      public double getObjective() {
+         return objective;
+      }
+
+      public int getChanges() {
+         return changes;
+      }
+   }
+}
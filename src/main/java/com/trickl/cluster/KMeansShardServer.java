@@ -0,0 +1,275 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Serves a KMeansShard to a SocketShardTransport, so a worker can run in
+ * another process. Connections are served one at a time, each until the
+ * coordinator closes its transport, until the server itself is closed.
+ * Requests and replies are written with DataOutputStream, each reply led by
+ * a status byte and, for a failed request, the error message. Lengths are
+ * checked against the shard before anything is allocated, and a request that
+ * cannot be read drops only its own connection.
+ * The main method starts a worker process serving rows of a file.
+ */
+public class KMeansShardServer implements Runnable, Closeable {
+
+   static final byte ROWS = 1;
+   static final byte COLUMNS = 2;
+   static final byte INITIALIZE = 3;
+   static final byte ASSIGN = 4;
+   static final byte LABELS = 5;
+   static final byte CLOSE = 6;
+
+   static final byte OK = 0;
+   static final byte ERROR = 1;
+
+   private final KMeansShard shard;
+   private final ServerSocket serverSocket;
+   private int maxClusters = 65536;
+
+   /**
+    * Listen on an ephemeral port of the loopback address.
+    */
+   public KMeansShardServer(KMeansShard shard) throws IOException {
+      this(shard, new ServerSocket(0, 1, InetAddress.getByName(null)));
+   }
+
+   public KMeansShardServer(KMeansShard shard, ServerSocket serverSocket) {
+      this.shard = shard;
+      this.serverSocket = serverSocket;
+   }
+
+   /**
+    * Serve a block of rows from a file of packed big-endian doubles, as read by
+    * OutOfCoreKMeans, on the loopback address. The port is printed once the
+    * server is listening, and the rows are served until the process is stopped.
+    * Arguments: file columns firstRow rows [port]
+    */
+   public static void main(String[] args) throws IOException {
+      if (args.length < 4 || args.length > 5) {
+         System.err.println("Usage: KMeansShardServer file columns firstRow rows [port]");
+         System.exit(1);
+      }
+
+      KMeansShard shard = KMeansShard.read(new File(args[0]), Integer.parseInt(args[1]),
+              Long.parseLong(args[2]), Integer.parseInt(args[3]));
+      int port = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+      KMeansShardServer server = new KMeansShardServer(shard, new ServerSocket(port, 1, InetAddress.getByName(null)));
+      System.out.println(server.getPort());
+      System.out.flush();
+      server.run();
+   }
+
+   public InetAddress getAddress() {
+      return serverSocket.getInetAddress();
+   }
+
+   public int getPort() {
+      return serverSocket.getLocalPort();
+   }
+
+   @Override
+   public void run() {
+      while (!serverSocket.isClosed()) {
+         try {
+            Socket socket = serverSocket.accept();
+            try {
+               serve(socket);
+            } finally {
+               socket.close();
+            }
+         } catch (IOException e) {
+            // Closing the server interrupts the accept, otherwise the
+            // coordinator has gone and the next one is awaited
+         } catch (RuntimeException e) {
+            // A misbehaving coordinator only loses its own connection
+         }
+      }
+   }
+
+   private void serve(Socket socket) throws IOException {
+      socket.setTcpNoDelay(true);
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      while (true) {
+         byte operation;
+         try {
+            operation = in.readByte();
+         } catch (EOFException e) {
+            return;
+         }
+
+         try {
+            switch (operation) {
+               case ROWS:
+                  out.writeByte(OK);
+                  out.writeInt(shard.rows());
+                  break;
+               case COLUMNS:
+                  out.writeByte(OK);
+                  out.writeInt(shard.columns());
+                  break;
+               case INITIALIZE: {
+                  int clusters = readClusters(in);
+                  int[] labels = new int[readLength(in, shard.rows())];
+                  for (int i = 0; i < labels.length; ++i) {
+                     labels[i] = in.readInt();
+                  }
+                  reply(out, shard.initialize(labels, clusters));
+                  break;
+               }
+               case ASSIGN: {
+                  int clusters = readClusters(in);
+                  double[] centroids = new double[readLength(in, (long) clusters * shard.columns())];
+                  for (int t = 0; t < centroids.length; ++t) {
+                     centroids[t] = in.readDouble();
+                  }
+                  reply(out, shard.assign(centroids, clusters));
+                  break;
+               }
+               case LABELS:
+                  out.writeByte(OK);
+                  writeInts(out, shard.getLabels());
+                  break;
+               case CLOSE:
+                  return;
+               default:
+                  throw new ProtocolException("Unknown operation " + operation + ".");
+            }
+         } catch (RuntimeException e) {
+            // The shard rejected a well formed request
+            writeError(out, e.getMessage());
+         } catch (ProtocolException e) {
+            // The rest of the request cannot be framed, so the connection is dropped
+            writeError(out, e.getMessage());
+            out.flush();
+            return;
+         }
+         out.flush();
+      }
+   }
+
+   private void reply(DataOutputStream out, KMeansShard.PartialSums partialSums) throws IOException {
+      out.writeByte(OK);
+      writePartialSums(out, partialSums);
+   }
+
+   // The number of clusters, bounded so a request cannot exhaust the heap
+   private int readClusters(DataInputStream in) throws IOException {
+      int clusters = in.readInt();
+      if (clusters < 1 || clusters > maxClusters) {
+         throw new ProtocolException("Between one and " + maxClusters + " clusters are required.");
+      }
+      return clusters;
+   }
+
+   // A length prefix, which must match the expected length before anything is allocated
+   private static int readLength(DataInputStream in, long expected) throws IOException {
+      int length = in.readInt();
+      if (length != expected) {
+         throw new ProtocolException("Expected " + expected + " values, not " + length + ".");
+      }
+      return length;
+   }
+
+   @Override
+   public void close() throws IOException {
+      serverSocket.close();
+   }
+
+   public int getMaxClusters() {
+      return maxClusters;
+   }
+
+   /**
+    * @param maxClusters The most clusters a coordinator may request, which
+    * bounds the memory a request can take
+    */
+   public void setMaxClusters(int maxClusters) {
+      this.maxClusters = maxClusters;
+   }
+
+   private static void writeError(DataOutputStream out, String message) throws IOException {
+      out.writeByte(ERROR);
+      out.writeUTF(String.valueOf(message));
+   }
+
+   static void writeInts(DataOutputStream out, int[] values) throws IOException {
+      out.writeInt(values.length);
+      for (int value : values) {
+         out.writeInt(value);
+      }
+   }
+
+   static int[] readInts(DataInputStream in) throws IOException {
+      int[] values = new int[in.readInt()];
+      for (int i = 0; i < values.length; ++i) {
+         values[i] = in.readInt();
+      }
+      return values;
+   }
+
+   static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+      out.writeInt(values.length);
+      for (double value : values) {
+         out.writeDouble(value);
+      }
+   }
+
+   static double[] readDoubles(DataInputStream in) throws IOException {
+      double[] values = new double[in.readInt()];
+      for (int i = 0; i < values.length; ++i) {
+         values[i] = in.readDouble();
+      }
+      return values;
+   }
+
+   static void writePartialSums(DataOutputStream out, KMeansShard.PartialSums partialSums) throws IOException {
+      out.writeInt(partialSums.getClusters());
+      out.writeInt(partialSums.getColumns());
+      writeDoubles(out, partialSums.getSums());
+      out.writeDouble(partialSums.getObjective());
+      out.writeInt(partialSums.getChanges());
+   }
+
+   static KMeansShard.PartialSums readPartialSums(DataInputStream in) throws IOException {
+      int clusters = in.readInt();
+      int columns = in.readInt();
+      double[] sums = readDoubles(in);
+      double objective = in.readDouble();
+      int changes = in.readInt();
+      return new KMeansShard.PartialSums(clusters, columns, sums, objective, changes);
+   }
+}
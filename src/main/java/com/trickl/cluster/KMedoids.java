@@ -24,7 +24,7 @@ import cern.colt.list.IntArrayList;
 import cern.colt.matrix.DoubleMatrix2D;
 import cern.colt.matrix.doublealgo.Statistic;
 import cern.colt.matrix.doublealgo.Statistic.VectorVectorFunction;
-import cern.colt.matrix.impl.SparseDoubleMatrix2D;
+import java.util.Arrays;
 import org.apache.commons.math3.distribution.UniformIntegerDistribution;
 import org.apache.commons.math3.random.MersenneTwister;
 import org.apache.commons.math3.random.RandomGenerator;
@@ -39,23 +39,53 @@ import org.apache.commons.math3.random.RandomGenerator;
  * Department of Computer Science, DG Vaishnav College, Chennai, India
  * @author tgee
  */
-public class KMedoids implements ClusterAlgorithm {
+public class KMedoids implements WeightedClusterAlgorithm {
    
    private DoubleMatrix2D partition;
+   private ClusterModel model;
+   private int[] labels;
+   private int clusters;
+   private double objective = Double.NaN;
    private int maxIterations = 1000;
    private RandomGenerator randomGenerator = new MersenneTwister();
    private IntArrayList medoids;
    private VectorVectorFunction distanceMeasure = Statistic.EUCLID;
+   private IterationListener iterationListener;
+   private boolean singlePrecision = false;
 
    public KMedoids() {
    }
 
    @Override
    public void cluster(DoubleMatrix2D data, int clusters) {
+      cluster(data, null, clusters);
+   }
+
+   /**
+    * @param weights The weight of each feature, or null for unit weights
+    */
+   @Override
+   public void cluster(DoubleMatrix2D data, double[] weights, int clusters) {
       int n = data.rows(); // Number of features
       int p = data.columns(); // Dimensions of features
+      CentroidEngine.checkWeights(weights, n);
+
+      // Copy the features into a row-major array for the distance kernel
+      double[] values = singlePrecision ? null : new double[n * p];
+      float[] floatValues = singlePrecision ? new float[n * p] : null;
+      for (int i = 0; i < n; i++) {
+         for (int j = 0; j < p; j++) {
+            if (singlePrecision) {
+               floatValues[i * p + j] = (float) data.getQuick(i, j);
+            } else {
+               values[i * p + j] = data.getQuick(i, j);
+            }
+         }
+      }
+      DistanceKernel distanceKernel = DistanceKernel.forMeasure(distanceMeasure);
 
-      partition = new SparseDoubleMatrix2D(n, clusters);
+      int[] labels = new int[n];
+      Arrays.fill(labels, -1);
       medoids = new IntArrayList(clusters);
 
       IntArrayList randomOrdering = new IntArrayList(n);
@@ -81,7 +111,11 @@ public class KMedoids implements ClusterAlgorithm {
       for (int itr = 0; itr < maxIterations && changedMedoid; ++itr) {
          // Get new partition matrix U by
          // assigning each object to the nearest medoid
-         for (int i = 0; i < n; i++) {            
+         long assignmentStart = iterationListener == null ? 0 : System.nanoTime();
+         double cost = 0;
+         int changes = 0;
+         long distanceEvaluations = (long) n * clusters;
+         for (int i = 0; i < n; i++) {
             double minDistance = Double.MAX_VALUE;
             int closestCluster = 0;
 
@@ -89,22 +123,22 @@ public class KMedoids implements ClusterAlgorithm {
                // U = 1 for the closest medoid
                // U = 0 otherwise
                int medoid = medoids.getQuick(k);
-               double distance = distanceMeasure.apply(data.viewRow(medoid), data.viewRow(i));
+               double distance = distance(distanceKernel, values, floatValues, p, medoid, i);
                if (distance < minDistance) {
                   minDistance = distance;
                   closestCluster = k;
                }
             }
 
-            if (partition.getQuick(i, closestCluster) == 0) {
-
-               for (int k = 0; k < clusters; k++) {
-                  partition.setQuick(i, k, (k == closestCluster) ? 1 : 0);
-               }
+            cost += weight(weights, i) * minDistance;
+            if (labels[i] != closestCluster) {
+               changes++;
             }
+            labels[i] = closestCluster;
          }
 
          // Try to find a better set of medoids
+         long updateStart = iterationListener == null ? 0 : System.nanoTime();
          changedMedoid = false;
          for (int k = 0; k < clusters; k++) {
 
@@ -113,14 +147,15 @@ public class KMedoids implements ClusterAlgorithm {
             double lowestCostDelta = 0;
             for (int i = 0; i < n; ++i) {
                int bestMedoid = medoid;
-               if (i != medoid && partition.getQuick(i, k) > 0) {
+               if (i != medoid && labels[i] == k) {
                   // Calculate the change in cost by swapping this configuration
-                  int costDelta = 0;
+                  double costDelta = 0;
                   for (int j = 0; j < n; ++j) {
-                     if (partition.getQuick(j, k) > 0) {                        
-                        double oldDistance = distanceMeasure.apply(data.viewRow(medoid), data.viewRow(j));
-                        double newDistance = distanceMeasure.apply(data.viewRow(i), data.viewRow(j));
-                        costDelta += newDistance - oldDistance;
+                     if (labels[j] == k) {
+                        distanceEvaluations += 2;
+                        double oldDistance = distance(distanceKernel, values, floatValues, p, medoid, j);
+                        double newDistance = distance(distanceKernel, values, floatValues, p, i, j);
+                        costDelta += weight(weights, j) * (newDistance - oldDistance);
                      }
                   }
 
@@ -136,18 +171,88 @@ public class KMedoids implements ClusterAlgorithm {
                }
             }
          }
+
+         if (iterationListener != null) {
+            long updateEnd = System.nanoTime();
+            iterationListener.iterationCompleted(new IterationEvent(this, itr, cost, changes, Double.NaN,
+                    distanceEvaluations, updateEnd - updateStart, updateStart - assignmentStart));
+         }
       }
+
+      // The sum of distances from each feature to its medoid
+      objective = 0;
+      for (int i = 0; i < n; i++) {
+         objective += weight(weights, i) * distance(distanceKernel, values, floatValues, p, medoids.getQuick(labels[i]), i);
+      }
+
+      this.labels = labels;
+      this.clusters = clusters;
+      partition = null;
+
+      double[] prototypes = new double[clusters * p];
+      for (int k = 0; k < clusters; k++) {
+         for (int j = 0; j < p; j++) {
+            prototypes[k * p + j] = data.getQuick(medoids.getQuick(k), j);
+         }
+      }
+      model = new ClusterModel(prototypes, clusters, p, distanceMeasure, Double.NaN);
    }
    
+   private static double weight(double[] weights, int i) {
+      return weights == null ? 1 : weights[i];
+   }
+
+   // The distance between features a and b, read from whichever copy of the data is held
+   private static double distance(DistanceKernel distanceKernel, double[] values, float[] floatValues, int p,
+           int a, int b) {
+      if (values != null) {
+         return distanceKernel.apply(values, a * p, values, b * p, p);
+      }
+      return distanceKernel.apply(floatValues, a * p, floatValues, b * p, p);
+   }
+
    public IntArrayList getMedoids() {
       return medoids;
    }
 
+   /**
+    * @return An immutable model assigning new features to the closest medoid
+    */
+   public ClusterModel getModel() {
+      return model;
+   }
+
+   /**
+    * @return The partition, built from the labels when first requested
+    */
    @Override
    public DoubleMatrix2D getPartition() {
+      if (partition == null && labels != null) {
+         partition = Labels.toPartition(labels, clusters);
+      }
       return partition;
    }
 
+   /**
+    * @return The cluster assigned to each feature
+    */
+   public int[] getLabels() {
+      return labels;
+   }
+
+   /**
+    * @return The weighted sum of distances from each feature to its medoid
+    */
+   @Override
+   public double getObjective() {
+      return objective;
+   }
+
+   @Override
+   public double evaluateObjective(DoubleMatrix2D data) {
+      return model.objective(data, 1);
+   }
+
    public int getMaxIterations() {
       return maxIterations;
    }
@@ -156,10 +261,12 @@ public class KMedoids implements ClusterAlgorithm {
       this.maxIterations = maxIterations;
    }
 
+   @Override
    public RandomGenerator getRandomGenerator() {
       return randomGenerator;
    }
 
+   @Override
    public void setRandomGenerator(RandomGenerator random) {
       this.randomGenerator = random;
    }
@@ -171,4 +278,26 @@ public class KMedoids implements ClusterAlgorithm {
    public void setDistanceMeasure(VectorVectorFunction distanceMeasure) {
       this.distanceMeasure = distanceMeasure;
    }
+
+   @Override
+   public IterationListener getIterationListener() {
+      return iterationListener;
+   }
+
+   @Override
+   public void setIterationListener(IterationListener iterationListener) {
+      this.iterationListener = iterationListener;
+   }
+
+   public boolean isSinglePrecision() {
+      return singlePrecision;
+   }
+
+   /**
+    * @param singlePrecision If true the features are held as floats while
+    * clustering, distances are still accumulated in double precision
+    */
+   public void setSinglePrecision(boolean singlePrecision) {
+      this.singlePrecision = singlePrecision;
+   }
 }
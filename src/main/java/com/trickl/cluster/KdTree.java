@@ -0,0 +1,302 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import java.util.Arrays;
+
+/**
+ * A kd-tree over the rows of the data, used to assign whole cells of features
+ * to their closest mean at once.
+ * Each cell keeps its bounding box. A candidate mean is filtered out of a cell
+ * when every point of the box is strictly closer to another candidate, so once
+ * a single candidate remains every feature below the cell belongs to it.
+ * Requires the Euclidean distance.
+ * See: An Efficient k-Means Clustering Algorithm: Analysis and Implementation
+ * Tapas Kanungo et al., IEEE Trans. Pattern Analysis and Machine Intelligence, 2002
+ */
+final class KdTree {
+
+   private static final int LEAF_SIZE = 8;
+
+   private final int p;
+   private final CentroidEngine engine;
+
+   // The features ordered so that every cell is a contiguous range
+   private final int[] features;
+
+   // Cells are stored in arrays indexed by cell, children are -1 for a leaf
+   private int cells = 0;
+   private int[] cellFrom;
+   private int[] cellTo;
+   private int[] leftChild;
+   private int[] rightChild;
+   private double[] lowerCorners;
+   private double[] upperCorners;
+   private int depth = 0;
+
+   // Scratch space for the candidate list at each depth of the traversal
+   private int[][] candidates;
+   private double[] vertex;
+
+   KdTree(CentroidEngine engine) {
+      int n = engine.n;
+      this.p = engine.p;
+      this.engine = engine;
+      this.features = new int[n];
+      for (int i = 0; i < n; i++) {
+         features[i] = i;
+      }
+
+      int capacity = Math.max(1, 2 * ((n + LEAF_SIZE - 1) / LEAF_SIZE));
+      cellFrom = new int[capacity];
+      cellTo = new int[capacity];
+      leftChild = new int[capacity];
+      rightChild = new int[capacity];
+      lowerCorners = new double[capacity * p];
+      upperCorners = new double[capacity * p];
+      vertex = new double[p];
+
+      build(0, n, 1);
+   }
+
+   private int build(int from, int to, int level) {
+      if (cells == cellFrom.length) {
+         grow();
+      }
+
+      int cell = cells++;
+      depth = Math.max(depth, level);
+      cellFrom[cell] = from;
+      cellTo[cell] = to;
+      leftChild[cell] = -1;
+      rightChild[cell] = -1;
+
+      // Bounding box of the features in the cell
+      int widestDimension = 0;
+      double widestSpread = 0;
+      for (int j = 0; j < p; j++) {
+         double lower = Double.POSITIVE_INFINITY;
+         double upper = Double.NEGATIVE_INFINITY;
+         for (int t = from; t < to; t++) {
+            double value = engine.value(features[t], j);
+            lower = Math.min(lower, value);
+            upper = Math.max(upper, value);
+         }
+         lowerCorners[cell * p + j] = lower;
+         upperCorners[cell * p + j] = upper;
+         if (upper - lower > widestSpread) {
+            widestSpread = upper - lower;
+            widestDimension = j;
+         }
+      }
+
+      if (to - from <= LEAF_SIZE || widestSpread == 0) {
+         return cell;
+      }
+
+      // Split at the median of the widest side, which keeps the tree balanced
+      int middle = from + (to - from) / 2;
+      select(from, to, middle, widestDimension);
+
+      int left = build(from, middle, level + 1);
+      int right = build(middle, to, level + 1);
+      leftChild[cell] = left;
+      rightChild[cell] = right;
+      return cell;
+   }
+
+   // Quickselect, leaving the feature of the given rank in place with no larger
+   // feature before it and no smaller feature after it
+   private void select(int from, int to, int rank, int dimension) {
+      int lower = from;
+      int upper = to - 1;
+      while (lower < upper) {
+         double pivot = engine.value(features[(lower + upper) >>> 1], dimension);
+         int left = lower;
+         int right = upper;
+         while (left <= right) {
+            while (engine.value(features[left], dimension) < pivot) {
+               left++;
+            }
+            while (engine.value(features[right], dimension) > pivot) {
+               right--;
+            }
+            if (left <= right) {
+               int feature = features[left];
+               features[left] = features[right];
+               features[right] = feature;
+               left++;
+               right--;
+            }
+         }
+
+         if (rank <= right) {
+            upper = right;
+         } else if (rank >= left) {
+            lower = left;
+         } else {
+            break;
+         }
+      }
+   }
+
+   private void grow() {
+      int capacity = 2 * cellFrom.length;
+      cellFrom = Arrays.copyOf(cellFrom, capacity);
+      cellTo = Arrays.copyOf(cellTo, capacity);
+      leftChild = Arrays.copyOf(leftChild, capacity);
+      rightChild = Arrays.copyOf(rightChild, capacity);
+      lowerCorners = Arrays.copyOf(lowerCorners, capacity * p);
+      upperCorners = Arrays.copyOf(upperCorners, capacity * p);
+   }
+
+   /**
+    * Label every feature with its closest mean.
+    * @param engine Holds the current means
+    * @param labels The cluster of each feature, updated in place
+    * @param counts Accumulates the changed features and distance evaluations
+    */
+   void assign(CentroidEngine engine, int[] labels, AssignmentCounts counts) {
+      int clusters = engine.clusters;
+      if (candidates == null || candidates[0].length != clusters) {
+         candidates = new int[depth + 1][clusters];
+      }
+
+      // The mean of an empty cluster is undefined and can never be the closest
+      int count = 0;
+      for (int k = 0; k < clusters; k++) {
+         if (!Double.isNaN(engine.centroids[k * p])) {
+            candidates[0][count++] = k;
+         }
+      }
+
+      if (count == 0) {
+         candidates[0][count++] = 0;
+      }
+
+      filter(engine, labels, counts, 0, 0, count);
+   }
+
+   private void filter(CentroidEngine engine, int[] labels, AssignmentCounts counts, int cell, int level, int count) {
+      int[] cellCandidates = candidates[level];
+
+      if (count > 1) {
+         // Find the candidate closest to the centre of the cell
+         counts.distanceEvaluations += count;
+         int closest = cellCandidates[0];
+         double minDistanceSquared = Double.MAX_VALUE;
+         for (int c = 0; c < count; c++) {
+            int k = cellCandidates[c];
+            double distanceSquared = 0;
+            for (int j = 0; j < p; j++) {
+               double centre = 0.5 * (lowerCorners[cell * p + j] + upperCorners[cell * p + j]);
+               double difference = engine.centroid(k, j) - centre;
+               distanceSquared += difference * difference;
+            }
+            if (distanceSquared < minDistanceSquared) {
+               minDistanceSquared = distanceSquared;
+               closest = k;
+            }
+         }
+
+         // Keep only the candidates that are closer for some point of the cell,
+         // testing the corner furthest in the direction of the candidate
+         int[] childCandidates = candidates[level + 1];
+         int childCount = 0;
+         for (int c = 0; c < count; c++) {
+            int k = cellCandidates[c];
+            if (k == closest) {
+               childCandidates[childCount++] = k;
+            } else {
+               counts.distanceEvaluations += 2;
+               if (!dominated(engine, k, closest, cell)) {
+                  childCandidates[childCount++] = k;
+               }
+            }
+         }
+
+         cellCandidates = childCandidates;
+         count = childCount;
+         level++;
+      }
+
+      if (count == 1) {
+         // The whole cell belongs to the one remaining candidate
+         int k = cellCandidates[0];
+         for (int t = cellFrom[cell]; t < cellTo[cell]; t++) {
+            int i = features[t];
+            if (labels[i] != k) {
+               counts.changes++;
+            }
+            labels[i] = k;
+         }
+         return;
+      }
+
+      if (leftChild[cell] >= 0) {
+         // The children only reorder the candidates at this level
+         filter(engine, labels, counts, leftChild[cell], level, count);
+         filter(engine, labels, counts, rightChild[cell], level, count);
+         return;
+      }
+
+      // Search the remaining candidates for each feature of the leaf, with ties
+      // going to the lowest index as in the exhaustive search
+      Arrays.sort(cellCandidates, 0, count);
+      counts.distanceEvaluations += (long) count * (cellTo[cell] - cellFrom[cell]);
+      for (int t = cellFrom[cell]; t < cellTo[cell]; t++) {
+         int i = features[t];
+         double minDistance = Double.MAX_VALUE;
+         int closestCluster = cellCandidates[0];
+         for (int c = 0; c < count; c++) {
+            double distance = engine.distance(i, cellCandidates[c]);
+            if (distance < minDistance) {
+               minDistance = distance;
+               closestCluster = cellCandidates[c];
+            }
+         }
+         if (labels[i] != closestCluster) {
+            counts.changes++;
+         }
+         labels[i] = closestCluster;
+      }
+   }
+
+   // True if every point of the cell is strictly closer to the mean of
+   // cluster l than to the mean of cluster k. The means are read in the same
+   // precision as the leaf distances, so a pruned candidate could not have won
+   private boolean dominated(CentroidEngine engine, int k, int l, int cell) {
+      for (int j = 0; j < p; j++) {
+         vertex[j] = engine.centroid(k, j) > engine.centroid(l, j)
+                 ? upperCorners[cell * p + j] : lowerCorners[cell * p + j];
+      }
+
+      double distanceSquaredK = 0;
+      double distanceSquaredL = 0;
+      for (int j = 0; j < p; j++) {
+         double differenceK = engine.centroid(k, j) - vertex[j];
+         double differenceL = engine.centroid(l, j) - vertex[j];
+         distanceSquaredK += differenceK * differenceK;
+         distanceSquaredL += differenceL * differenceL;
+      }
+      return distanceSquaredK > distanceSquaredL;
+   }
+}
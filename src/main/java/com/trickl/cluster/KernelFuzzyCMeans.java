@@ -20,12 +20,10 @@
  */
 package com.trickl.cluster;
 
-import cern.colt.function.IntIntDoubleFunction;
 import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.DoubleMatrix2D;
 import cern.colt.matrix.impl.DenseDoubleMatrix1D;
-import cern.colt.matrix.impl.DenseDoubleMatrix2D;
-import cern.colt.matrix.impl.SparseDoubleMatrix2D;
+import java.util.Arrays;
 import org.apache.commons.math3.random.MersenneTwister;
 import org.apache.commons.math3.random.RandomGenerator;
 
@@ -42,6 +40,7 @@ public class KernelFuzzyCMeans implements ClusterAlgorithm {
    private int maxIterations = 1000;
    private RandomGenerator randomGenerator = new MersenneTwister();
    private PartitionGenerator partitionGenerator = new HardRandomPartitionGenerator();
+   private IterationListener iterationListener;
 
    public KernelFuzzyCMeans() {
    }
@@ -54,91 +53,77 @@ public class KernelFuzzyCMeans implements ClusterAlgorithm {
    public void cluster(DoubleMatrix2D kernel, int clusters) {
       int n = kernel.rows(); // Number of features      
 
-      partition = new SparseDoubleMatrix2D(n, clusters);
+      MembershipMatrix membershipMatrix = new MembershipMatrix(n, clusters);
+      partition = membershipMatrix;
       partitionGenerator.setRandomGenerator(randomGenerator);
+      if (partitionGenerator instanceof DataPartitionGenerator) {
+         ((DataPartitionGenerator) partitionGenerator).setKernel(kernel);
+      }
       partitionGenerator.generate(partition);
 
-      prototypeVectors = new SparseDoubleMatrix2D(n, clusters);
+      MembershipMatrix prototypeMatrix = new MembershipMatrix(n, clusters);
+      prototypeVectors = prototypeMatrix;
 
-      final DoubleMatrix1D clusterMembershipSums = new DenseDoubleMatrix1D(clusters);
+      // Work directly on the row-major memberships and prototypes
+      double[] memberships = membershipMatrix.elements();
+      double[] prototypes = prototypeMatrix.elements();
+      double[] clusterMembershipSums = new double[clusters];
+      double[] distancesSquared = new double[n * clusters];
+      double[] fuzzified = new double[n * clusters];
+      DoubleMatrix1D Kgamma = new DenseDoubleMatrix1D(n);
 
       // Begin the main loop of alternating optimization
       double stepSize = getEpsilon();
       for (int itr = 0; itr < maxIterations && stepSize >= getEpsilon(); ++itr) {
          // Get new prototypes (v) for each cluster using weighted median
-         clusterMembershipSums.assign(0);
-
-         partition.forEachNonZero(new IntIntDoubleFunction() {
-
-            @Override
-            public double apply(int i, int k, double value) {
-               double sum = clusterMembershipSums.getQuick(k);
-               clusterMembershipSums.setQuick(k, sum + value);
-               return value;
-            }
-         });
-
-         // Reset the old prototype vectors
-         prototypeVectors.forEachNonZero(new IntIntDoubleFunction() {
-
-            @Override
-            public double apply(int i, int i1, double d) {
-               return 0;
+         long updateStart = iterationListener == null ? 0 : System.nanoTime();
+         Arrays.fill(clusterMembershipSums, 0);
+         for (int i = 0; i < n; i++) {
+            for (int k = 0; k < clusters; k++) {
+               clusterMembershipSums[k] += memberships[i * clusters + k];
             }
-         });
-
-         partition.forEachNonZero(new IntIntDoubleFunction() {
+         }
 
-            @Override
-            public double apply(int i, int k, double value) {
-               prototypeVectors.setQuick(i, k, value / clusterMembershipSums.getQuick(k));
-               return value;
+         for (int i = 0; i < n; i++) {
+            for (int k = 0; k < clusters; k++) {
+               double value = memberships[i * clusters + k];
+               prototypes[i * clusters + k] = value == 0 ? 0 : value / clusterMembershipSums[k];
             }
-         });
+         }
 
-         // Calculate distance measure d:
-         DoubleMatrix2D distancesSquared = new DenseDoubleMatrix2D(n, clusters);
+         // Calculate distance measure d, the span of each prototype
+         // gamma * K * gamma is shared by every feature
          for (int k = 0; k < clusters; k++) {
+            DoubleMatrix1D gamma = prototypeVectors.viewColumn(k);
+            kernel.zMult(gamma, Kgamma);
+            double clusterSpan = gamma.zDotProduct(Kgamma);
             for (int i = 0; i < n; i++) {
                // Euclidean distance calculation
-               DoubleMatrix1D gamma = prototypeVectors.viewColumn(k);
-               DoubleMatrix1D Kgamma = new DenseDoubleMatrix1D(kernel.rows());
-               kernel.zMult(gamma, Kgamma);
                double distanceSquared = kernel.getQuick(i, i)
                        - 2. * kernel.viewColumn(i).zDotProduct(gamma)
-                       + gamma.zDotProduct(Kgamma);
+                       + clusterSpan;
 
-               distancesSquared.setQuick(i, k, distanceSquared);
+               distancesSquared[i * clusters + k] = distanceSquared;
             }
          }
 
-         // Get new partition matrix U:
+         // Get new partition matrix U, the exact analytic solution given by
+         // Lagrange multipliers. Stepsize is max(delta(U))
+         long assignmentStart = iterationListener == null ? 0 : System.nanoTime();
          stepSize = 0;
-         for (int k = 0; k < clusters; k++) {
-            for (int i = 0; i < n; i++) {
-               double u = 0;
-
-               if (distancesSquared.getQuick(i, k) == 0) {
-                  // Handle this awkward case
-                  u = 1;
-               } else {
-                  double sum = 0;
-                  for (int j = 0; j < clusters; j++) {
-                     // Exact analytic solution given by Lagrange multipliers
-                     sum += Math.pow(distancesSquared.getQuick(i, k) / distancesSquared.getQuick(i, j),
-                             1.0 / (getFuzzification() - 1.0));
-                  }
-                  u = 1 / sum;
-               }
-
-               double u0 = partition.getQuick(i, k);
-               partition.setQuick(i, k, u);
-
-               // Stepsize is max(delta(U))
-               if (u - u0 > stepSize) {
-                  stepSize = u - u0;
-               }
+         for (int i = 0; i < n; i++) {
+            stepSize = Math.max(stepSize, FuzzyMemberships.update(distancesSquared, memberships, fuzzified,
+                    i * clusters, clusters, getFuzzification()));
+         }
+
+         if (iterationListener != null) {
+            long assignmentEnd = System.nanoTime();
+            double objective = 0;
+            for (int t = 0; t < memberships.length; t++) {
+               objective += fuzzified[t] * distancesSquared[t];
             }
+            iterationListener.iterationCompleted(new IterationEvent(this, itr, objective, -1, stepSize,
+                    (long) n * clusters, assignmentStart - updateStart, assignmentEnd - assignmentStart));
          }
       }
    }
@@ -164,6 +149,14 @@ public class KernelFuzzyCMeans implements ClusterAlgorithm {
       this.randomGenerator = random;
    }
 
+   public PartitionGenerator getPartitionGenerator() {
+      return partitionGenerator;
+   }
+
+   public void setPartitionGenerator(PartitionGenerator partitionGenerator) {
+      this.partitionGenerator = partitionGenerator;
+   }
+
    public double getFuzzification() {
       return fuzzification;
    }
@@ -179,4 +172,14 @@ public class KernelFuzzyCMeans implements ClusterAlgorithm {
    public void setEpsilon(double epsilon) {
       this.epsilon = epsilon;
    }
+
+   @Override
+   public IterationListener getIterationListener() {
+      return iterationListener;
+   }
+
+   @Override
+   public void setIterationListener(IterationListener iterationListener) {
+      this.iterationListener = iterationListener;
+   }
 }
@@ -25,6 +25,7 @@ import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.DoubleMatrix2D;
 import cern.colt.matrix.impl.DenseDoubleMatrix1D;
 import cern.colt.matrix.impl.SparseDoubleMatrix2D;
+import java.util.Arrays;
 import org.apache.commons.math3.random.MersenneTwister;
 import org.apache.commons.math3.random.RandomGenerator;
 
@@ -36,9 +37,12 @@ public class KernelKMeans implements ClusterAlgorithm {
 
    private DoubleMatrix2D prototypeVectors;
    private DoubleMatrix2D partition;
+   private int[] labels;
+   private int clusters;
    private int maxIterations = 1000;
    private RandomGenerator randomGenerator = new MersenneTwister();
    private PartitionGenerator partitionGenerator = new HardRandomPartitionGenerator();
+   private IterationListener iterationListener;
 
    public KernelKMeans() {
    }
@@ -51,29 +55,26 @@ public class KernelKMeans implements ClusterAlgorithm {
    public void cluster(DoubleMatrix2D kernel, int clusters) {
       int n = kernel.rows(); // Number of features      
 
-      partition = new SparseDoubleMatrix2D(n, clusters);
       partitionGenerator.setRandomGenerator(randomGenerator);
-      partitionGenerator.generate(partition);
+      if (partitionGenerator instanceof DataPartitionGenerator) {
+         ((DataPartitionGenerator) partitionGenerator).setKernel(kernel);
+      }
+      final int[] labels = Labels.generate(partitionGenerator, n, clusters);
 
       prototypeVectors = new SparseDoubleMatrix2D(n, clusters);
 
       boolean changedPartition = true;
 
-      final DoubleMatrix1D clusterMembershipSums = new DenseDoubleMatrix1D(clusters);
+      final int[] clusterSizes = new int[clusters];
 
       // Begin the main loop of alternating optimization
       for (int itr = 0; itr < maxIterations && changedPartition; ++itr) {
          // Get new prototypes (v) for each cluster using weighted median
-         clusterMembershipSums.assign(0);
-
-         partition.forEachNonZero(new IntIntDoubleFunction() {
-            @Override
-            public double apply(int i, int k, double value) {
-               double sum = clusterMembershipSums.getQuick(k);
-               clusterMembershipSums.setQuick(k, sum + value);
-               return value;
-            }
-         });
+         long updateStart = iterationListener == null ? 0 : System.nanoTime();
+         Arrays.fill(clusterSizes, 0);
+         for (int i = 0; i < n; i++) {
+            clusterSizes[labels[i]]++;
+         }
 
          // Reset the old prototype vectors
          prototypeVectors.forEachNonZero(new IntIntDoubleFunction() {
@@ -83,13 +84,9 @@ public class KernelKMeans implements ClusterAlgorithm {
             }         
          });
 
-         partition.forEachNonZero(new IntIntDoubleFunction() {
-            @Override
-            public double apply(int i, int k, double value) {
-               prototypeVectors.setQuick(i, k, value / clusterMembershipSums.getQuick(k));               
-               return 0;
-            }
-         });
+         for (int i = 0; i < n; i++) {
+            prototypeVectors.setQuick(i, labels[i], 1. / clusterSizes[labels[i]]);
+         }
 
          // Calculate cluster spans O(n*s)
          final DoubleMatrix1D clusterSpans = new DenseDoubleMatrix1D(clusters);
@@ -102,7 +99,9 @@ public class KernelKMeans implements ClusterAlgorithm {
          }
 
          // Get new partition matrix U:
-         changedPartition = false;
+         long assignmentStart = iterationListener == null ? 0 : System.nanoTime();
+         double objective = 0;
+         int changes = 0;
          for (int i = 0; i < n; i++) {
             double minDistance = Double.MAX_VALUE;
             int closestCluster = 0;
@@ -121,20 +120,44 @@ public class KernelKMeans implements ClusterAlgorithm {
                }
             }
 
-            partition.setQuick(i, closestCluster, 1);
-
-            if (!changedPartition && prototypeVectors.getQuick(i, closestCluster) == 0) {
-               changedPartition = true;               
+            objective += minDistance * minDistance;
+            if (labels[i] != closestCluster) {
+               changes++;
             }
+            labels[i] = closestCluster;
+         }
+         changedPartition = changes > 0;
+
+         if (iterationListener != null) {
+            long assignmentEnd = System.nanoTime();
+            iterationListener.iterationCompleted(new IterationEvent(this, itr, objective, changes, Double.NaN,
+                    (long) n * clusters, assignmentStart - updateStart, assignmentEnd - assignmentStart));
          }
       }
+
+      this.labels = labels;
+      this.clusters = clusters;
+      partition = null;
    }
 
+   /**
+    * @return The partition, built from the labels when first requested
+    */
    @Override
    public DoubleMatrix2D getPartition() {
+      if (partition == null && labels != null) {
+         partition = Labels.toPartition(labels, clusters);
+      }
       return partition;
    }
 
+   /**
+    * @return The cluster assigned to each feature
+    */
+   public int[] getLabels() {
+      return labels;
+   }
+
    public int getMaxIterations() {
       return maxIterations;
    }
@@ -150,4 +173,22 @@ public class KernelKMeans implements ClusterAlgorithm {
    public void setRandomGenerator(RandomGenerator random) {
       this.randomGenerator = random;
    }
+
+   public PartitionGenerator getPartitionGenerator() {
+      return partitionGenerator;
+   }
+
+   public void setPartitionGenerator(PartitionGenerator partitionGenerator) {
+      this.partitionGenerator = partitionGenerator;
+   }
+
+   @Override
+   public IterationListener getIterationListener() {
+      return iterationListener;
+   }
+
+   @Override
+   public void setIterationListener(IterationListener iterationListener) {
+      this.iterationListener = iterationListener;
+   }
 }
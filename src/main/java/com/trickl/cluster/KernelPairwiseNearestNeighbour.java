@@ -54,14 +54,16 @@ public class KernelPairwiseNearestNeighbour implements ClusterAlgorithm {
    private CompressedSparseColumnMatrix prototypeVectors;
    //private SparseDoubleMatrix2D prototypeVectorsCheck;
    private DoubleMatrix2D partition;
+   private int[] labels;
+   private int clusters;
    private final double NON_ZERO_OFFSET = 1;
+   private IterationListener iterationListener;
 
    @Override
    public void cluster(final DoubleMatrix2D kernel, int clusters) {
 
       int n = kernel.rows(); // Number of features
 
-      partition = new SparseDoubleMatrix2D(n, clusters);
       prototypeVectors = new CompressedSparseColumnMatrix(n, n);
      // prototypeVectorsCheck = new SparseDoubleMatrix2D(n, n);
 
@@ -101,8 +103,10 @@ public class KernelPairwiseNearestNeighbour implements ClusterAlgorithm {
       });
       
       // Repetitively merge clusters until only the required number remain
+      double mergeCost = 0;
       for (int itr = 0; itr < n - clusters; itr++) {
 
+         long assignmentStart = iterationListener == null ? 0 : System.nanoTime();
          final BestMergePair bestMergePair = new BestMergePair();
          final AtomicInteger count = new AtomicInteger(0);
          distances.forEachNonZero(new IntIntDoubleFunction() {
@@ -125,6 +129,10 @@ public class KernelPairwiseNearestNeighbour implements ClusterAlgorithm {
          double n_b = nodeWeights.getQuick(bestMergePair.oldCluster);
 
          // Merge the nearest clusters
+         long updateStart = iterationListener == null ? 0 : System.nanoTime();
+         int changes = (int) n_b;
+         mergeCost += bestMergePair.distance;
+         long distanceEvaluations = 0;
          DoubleMatrix2D gamma = new SparseDoubleMatrix2D(n, 1);
 
          //gamma.assign(prototypeVectorsCheck.viewPart(0, bestMergePair.newCluster, n, 1), Functions.plusMult(n_a / (n_a + n_b)));
@@ -174,6 +182,7 @@ public class KernelPairwiseNearestNeighbour implements ClusterAlgorithm {
             int i = newClusterNeighbourIndexList.elements()[t];
             int j = bestMergePair.newCluster;
             if (i != bestMergePair.oldCluster && i != j) {
+               distanceEvaluations++;
                n_a = nodeWeights.getQuick(i);
                n_b = nodeWeights.getQuick(j);
 
@@ -189,9 +198,16 @@ public class KernelPairwiseNearestNeighbour implements ClusterAlgorithm {
                distances.setQuick(i, j, distance);
             }
          }
+
+         if (iterationListener != null) {
+            long updateEnd = System.nanoTime();
+            iterationListener.iterationCompleted(new IterationEvent(this, itr, mergeCost, changes, Double.NaN,
+                    distanceEvaluations, updateEnd - updateStart, updateStart - assignmentStart));
+         }
       }
 
-      // Finally use the merge map to figure out the partition
+      // Finally use the merge map to figure out the labels
+      labels = new int[n];
       Map<Integer, Integer> clusterIndices = new HashMap<Integer, Integer>();
       int clusterIndex = 0;
       for (int i = 0; i < n; ++i) {
@@ -204,12 +220,42 @@ public class KernelPairwiseNearestNeighbour implements ClusterAlgorithm {
             clusterIndices.put(j, clusterIndex++);
          }
 
-         partition.setQuick(i, clusterIndices.get(j), 1.);
+         labels[i] = clusterIndices.get(j);
       }
+
+      this.clusters = clusters;
+      partition = null;
    }
 
+   /**
+    * @return The partition, built from the labels when first requested
+    */
    @Override
    public DoubleMatrix2D getPartition() {
+      if (partition == null && labels != null) {
+         partition = Labels.toPartition(labels, clusters);
+      }
       return partition;
    }
+
+   /**
+    * @return The cluster assigned to each feature
+    */
+   public int[] getLabels() {
+      return labels;
+   }
+
+   @Override
+   public IterationListener getIterationListener() {
+      return iterationListener;
+   }
+
+   /**
+    * @param iterationListener Each merge is an iteration, with the total cost of the
+    * merges so far as the objective
+    */
+   @Override
+   public void setIterationListener(IterationListener iterationListener) {
+      this.iterationListener = iterationListener;
+   }
 }
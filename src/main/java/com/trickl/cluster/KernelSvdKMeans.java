@@ -26,6 +26,7 @@ import cern.colt.matrix.DoubleMatrix2D;
 import cern.colt.matrix.impl.DenseDoubleMatrix1D;
 import cern.colt.matrix.impl.DenseDoubleMatrix2D;
 import cern.colt.matrix.impl.SparseDoubleMatrix2D;
+import java.util.Arrays;
 import org.apache.commons.math3.random.MersenneTwister;
 import org.apache.commons.math3.random.RandomGenerator;
 
@@ -37,9 +38,12 @@ public class KernelSvdKMeans {
 
    private DoubleMatrix2D prototypeVectors;
    private DoubleMatrix2D partition;
+   private int[] labels;
+   private int clusters;
    private int maxIterations = 1000;
    private RandomGenerator randomGenerator = new MersenneTwister();
    private PartitionGenerator partitionGenerator = new HardRandomPartitionGenerator();
+   private IterationListener iterationListener;
 
    public KernelSvdKMeans() {
    }
@@ -52,33 +56,26 @@ public class KernelSvdKMeans {
       int n = U.rows(); // Number of features
       final int p = singularValues.length;
 
-      partition = new SparseDoubleMatrix2D(n, clusters);
       partitionGenerator.setRandomGenerator(randomGenerator);
-      partitionGenerator.generate(partition);
+      final int[] labels = Labels.generate(partitionGenerator, n, clusters);
 
       prototypeVectors = new SparseDoubleMatrix2D(n, clusters);
 
       boolean changedPartition = true;
 
       // Work matrices
-      final DoubleMatrix1D clusterMembershipSums = new DenseDoubleMatrix1D(clusters);
+      final int[] clusterSizes = new int[clusters];
       final DoubleMatrix1D clusterSpans = new DenseDoubleMatrix1D(clusters);
       final DoubleMatrix2D Vtg = new DenseDoubleMatrix2D(p, n);
 
       // Begin the main loop of alternating optimization
       for (int itr = 0; itr < maxIterations && changedPartition; ++itr) {
          // Get new prototypes (v) for each cluster using weighted median
-         clusterMembershipSums.assign(0);
-
-         partition.forEachNonZero(new IntIntDoubleFunction() {
-
-            @Override
-            public double apply(int i, int k, double value) {
-               double sum = clusterMembershipSums.getQuick(k);
-               clusterMembershipSums.setQuick(k, sum + value);
-               return value;
-            }
-         });
+         long updateStart = iterationListener == null ? 0 : System.nanoTime();
+         Arrays.fill(clusterSizes, 0);
+         for (int i = 0; i < n; i++) {
+            clusterSizes[labels[i]]++;
+         }
 
          // Reset the old prototype vectors
          prototypeVectors.forEachNonZero(new IntIntDoubleFunction() {
@@ -89,14 +86,9 @@ public class KernelSvdKMeans {
             }
          });
 
-         partition.forEachNonZero(new IntIntDoubleFunction() {
-
-            @Override
-            public double apply(int i, int k, double value) {
-               prototypeVectors.setQuick(i, k, value / clusterMembershipSums.getQuick(k));
-               return 0;
-            }
-         });
+         for (int i = 0; i < n; i++) {
+            prototypeVectors.setQuick(i, labels[i], 1. / clusterSizes[labels[i]]);
+         }
 
          // Calculate Vt * gamma, O(n * s)
          Vtg.assign(0);
@@ -133,7 +125,9 @@ public class KernelSvdKMeans {
          });
 
          // Calculate cluster distance O(n*k*s)
-         changedPartition = false;
+         long assignmentStart = iterationListener == null ? 0 : System.nanoTime();
+         double objective = 0;
+         int changes = 0;
          for (int i = 0; i < n; i++) {
             double minDistance = Double.MAX_VALUE;
             int closestCluster = 0;
@@ -155,19 +149,50 @@ public class KernelSvdKMeans {
                }
             }
 
-            partition.setQuick(i, closestCluster, 1);
+            if (iterationListener != null) {
+               // The distance omits the constant K(i, i)
+               objective += minDistance;
+               for (int s = 0; s < p; ++s) {
+                  objective += U.getQuick(i, s) * singularValues[s] * V.getQuick(i, s);
+               }
+            }
 
-            if (!changedPartition && prototypeVectors.getQuick(i, closestCluster) == 0) {
-               changedPartition = true;
+            if (labels[i] != closestCluster) {
+               changes++;
             }
+            labels[i] = closestCluster;
+         }
+         changedPartition = changes > 0;
+
+         if (iterationListener != null) {
+            long assignmentEnd = System.nanoTime();
+            iterationListener.iterationCompleted(new IterationEvent(this, itr, objective, changes, Double.NaN,
+                    (long) n * clusters, assignmentStart - updateStart, assignmentEnd - assignmentStart));
          }
       }
+
+      this.labels = labels;
+      this.clusters = clusters;
+      partition = null;
    }
 
+   /**
+    * @return The partition, built from the labels when first requested
+    */
    public DoubleMatrix2D getPartition() {
+      if (partition == null && labels != null) {
+         partition = Labels.toPartition(labels, clusters);
+      }
       return partition;
    }
 
+   /**
+    * @return The cluster assigned to each feature
+    */
+   public int[] getLabels() {
+      return labels;
+   }
+
    public int getMaxIterations() {
       return maxIterations;
    }
@@ -183,4 +208,12 @@ public class KernelSvdKMeans {
    public void setRandomGenerator(RandomGenerator random) {
       this.randomGenerator = random;
    }
+
+   public IterationListener getIterationListener() {
+      return iterationListener;
+   }
+
+   public void setIterationListener(IterationListener iterationListener) {
+      this.iterationListener = iterationListener;
+   }
 }
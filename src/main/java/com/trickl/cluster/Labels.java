@@ -0,0 +1,92 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.impl.SparseDoubleMatrix2D;
+
+/**
+ * Conversions between hard partitions and arrays of cluster labels, one
+ * label per feature.
+ */
+final class Labels {
+
+   private Labels() {
+   }
+
+   /**
+    * Label each feature with the cluster of its greatest membership, ties going
+    * to the lowest cluster.
+    */
+   static int[] fromPartition(DoubleMatrix2D partition) {
+      int n = partition.rows();
+      int clusters = partition.columns();
+      int[] labels = new int[n];
+      for (int i = 0; i < n; i++) {
+         for (int k = 1; k < clusters; k++) {
+            if (partition.getQuick(i, k) > partition.getQuick(i, labels[i])) {
+               labels[i] = k;
+            }
+         }
+      }
+      return labels;
+   }
+
+   /**
+    * Label the features with an initial partition, directly when the
+    * generator can, otherwise from the argmax of a generated partition.
+    * @param generator The partition generator, already given its data
+    * @param n The number of features
+    * @param clusters The number of clusters
+    */
+   static int[] generate(PartitionGenerator generator, int n, int clusters) {
+      int[] labels = new int[n];
+      if (generator instanceof HardPartitionGenerator) {
+         ((HardPartitionGenerator) generator).generateLabels(labels, clusters);
+         return labels;
+      }
+
+      DoubleMatrix2D partition = new SparseDoubleMatrix2D(n, clusters);
+      generator.generate(partition);
+      return fromPartition(partition);
+   }
+
+   /**
+    * Fill a partition with a single unit membership in each row.
+    */
+   static void fill(DoubleMatrix2D partition, int[] labels) {
+      partition.assign(0);
+      for (int i = 0; i < labels.length; i++) {
+         partition.setQuick(i, labels[i], 1);
+      }
+   }
+
+   /**
+    * @return A partition with a single unit membership in each row
+    */
+   static DoubleMatrix2D toPartition(int[] labels, int clusters) {
+      DoubleMatrix2D partition = new SparseDoubleMatrix2D(labels.length, clusters);
+      for (int i = 0; i < labels.length; i++) {
+         partition.setQuick(i, labels[i], 1);
+      }
+      return partition;
+   }
+}
@@ -0,0 +1,122 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * A partition read from a cluster file, backed directly by the memory-mapped
+ * file rather than a copy.
+ * It is read-only and, as every read is absolute, may be shared between threads.
+ * See: ClusterFormat
+ */
+public final class MappedPartition {
+
+   private final int rows;
+   private final int clusters;
+   private final IntBuffer labels; // Null for a fuzzy partition
+   private final DoubleBuffer memberships; // Null for a hard partition
+
+   MappedPartition(int rows, int clusters, IntBuffer labels, DoubleBuffer memberships) {
+      this.rows = rows;
+      this.clusters = clusters;
+      this.labels = labels;
+      this.memberships = memberships;
+   }
+
+   public int rows() {
+      return rows;
+   }
+
+   public int clusters() {
+      return clusters;
+   }
+
+   /**
+    * @return True if the partition holds memberships, false if it holds labels
+    */
+   public boolean isFuzzy() {
+      return memberships != null;
+   }
+
+   /**
+    * @return The cluster of feature i, for a fuzzy partition the cluster of highest membership
+    */
+   public int getLabel(int i) {
+      if (labels != null) {
+         return labels.get(i);
+      }
+
+      int label = 0;
+      for (int k = 1; k < clusters; k++) {
+         if (memberships.get(i * clusters + k) > memberships.get(i * clusters + label)) {
+            label = k;
+         }
+      }
+      return label;
+   }
+
+   /**
+    * @return The membership of feature i in cluster k
+    */
+   public double getMembership(int i, int k) {
+      if (labels != null) {
+         return labels.get(i) == k ? 1 : 0;
+      }
+      return memberships.get(i * clusters + k);
+   }
+
+   /**
+    * @return A read-only view of the labels, or null for a fuzzy partition
+    */
+   public IntBuffer getLabels() {
+      return labels == null ? null : labels.asReadOnlyBuffer();
+   }
+
+   /**
+    * @return A read-only view of the row-major memberships, or null for a hard partition
+    */
+   public DoubleBuffer getMemberships() {
+      return memberships == null ? null : memberships.asReadOnlyBuffer();
+   }
+
+   /**
+    * @return A copy of the partition as an n x clusters matrix
+    */
+   public DoubleMatrix2D toMatrix() {
+      if (labels != null) {
+         int[] copy = new int[rows];
+         for (int i = 0; i < rows; i++) {
+            copy[i] = labels.get(i);
+         }
+         return Labels.toPartition(copy, clusters);
+      }
+
+      MembershipMatrix matrix = new MembershipMatrix(rows, clusters);
+      double[] elements = matrix.elements();
+      for (int s = 0; s < elements.length; s++) {
+         elements[s] = memberships.get(s);
+      }
+      return matrix;
+   }
+}
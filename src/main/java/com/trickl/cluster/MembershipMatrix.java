@@ -0,0 +1,38 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
+
+/**
+ * A dense partition whose memberships can also be read and written directly
+ * as a row-major array, membership (i, k) at i * columns + k.
+ */
+final class MembershipMatrix extends DenseDoubleMatrix2D {
+
+   MembershipMatrix(int rows, int columns) {
+      super(rows, columns);
+   }
+
+   double[] elements() {
+      return elements;
+   }
+}
@@ -0,0 +1,216 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.doublealgo.Statistic;
+import cern.colt.matrix.doublealgo.Statistic.VectorVectorFunction;
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
+import org.apache.commons.math3.distribution.UniformIntegerDistribution;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * K-Means where each iteration moves the means towards a small random batch
+ * of the features, rather than recalculating them from every feature.
+ * Each mean has its own learning rate, which decays as it absorbs more features.
+ * See: Web-Scale K-Means Clustering
+ * D. Sculley, WWW 2010
+ */
+public class MiniBatchKMeans implements ClusterAlgorithm {
+
+   private DoubleMatrix2D means;
+   private DoubleMatrix2D partition;
+   private int[] labels;
+   private int clusters;
+   private int maxIterations = 100;
+   private int batchSize = 100;
+   private RandomGenerator randomGenerator = new MersenneTwister();
+   private VectorVectorFunction distanceMeasure = Statistic.EUCLID;
+   private IterationListener iterationListener;
+
+   public MiniBatchKMeans() {
+   }
+
+   @Override
+   public void cluster(DoubleMatrix2D data, int clusters) {
+      int n = data.rows(); // Number of features
+      int p = data.columns(); // Dimensions of features
+      if (clusters < 1 || clusters > n) {
+         throw new IllegalArgumentException("Between one and n clusters are required.");
+      }
+      if (batchSize < 1) {
+         throw new IllegalArgumentException("At least one feature per batch is required.");
+      }
+
+      CentroidEngine engine = new CentroidEngine(data, clusters, distanceMeasure, null);
+      double[] centroids = engine.centroids;
+
+      // Choose the initial means by shuffling the data
+      int[] randomOrdering = new int[n];
+      for (int i = 0; i < n; ++i) {
+         randomOrdering[i] = i;
+      }
+
+      for (int k = 0; k < clusters; ++k) {
+         UniformIntegerDistribution uniform = new UniformIntegerDistribution(randomGenerator, k, n - 1);
+         int s = uniform.sample();
+         int feature = randomOrdering[s];
+         randomOrdering[s] = randomOrdering[k];
+         randomOrdering[k] = feature;
+         System.arraycopy(engine.data, feature * p, centroids, k * p, p);
+      }
+
+      // The number of features absorbed by each mean so far
+      long[] counts = new long[clusters];
+      int[] batch = new int[batchSize];
+      int[] batchLabels = new int[batchSize];
+      UniformIntegerDistribution uniform = new UniformIntegerDistribution(randomGenerator, 0, n - 1);
+
+      for (int itr = 0; itr < maxIterations; ++itr) {
+         // Assign the whole batch before moving any mean
+         long assignmentStart = iterationListener == null ? 0 : System.nanoTime();
+         for (int b = 0; b < batchSize; b++) {
+            batch[b] = uniform.sample();
+            batchLabels[b] = closestCluster(engine, batch[b]);
+         }
+
+         // The objective is only known for the batch
+         double batchObjective = Double.NaN;
+         if (iterationListener != null) {
+            batchObjective = 0;
+            for (int b = 0; b < batchSize; b++) {
+               double distance = engine.distance(batch[b], batchLabels[b]);
+               batchObjective += distance * distance;
+            }
+         }
+
+         // Gradient step with a per-mean learning rate of 1 / count
+         long updateStart = iterationListener == null ? 0 : System.nanoTime();
+         for (int b = 0; b < batchSize; b++) {
+            int k = batchLabels[b];
+            counts[k]++;
+            double learningRate = 1.0 / counts[k];
+            int offset = batch[b] * p;
+            for (int j = 0; j < p; j++) {
+               centroids[k * p + j] += learningRate * (engine.data[offset + j] - centroids[k * p + j]);
+            }
+         }
+
+         if (iterationListener != null) {
+            long updateEnd = System.nanoTime();
+            iterationListener.iterationCompleted(new IterationEvent(this, itr, batchObjective, -1, Double.NaN,
+                    (long) batchSize * clusters, updateEnd - updateStart, updateStart - assignmentStart));
+         }
+      }
+
+      means = new DenseDoubleMatrix2D(p, clusters);
+      engine.copyMeansTo(means);
+
+      // Label each feature with the closest prototype
+      labels = new int[n];
+      for (int i = 0; i < n; i++) {
+         labels[i] = closestCluster(engine, i);
+      }
+      this.clusters = clusters;
+      partition = null;
+   }
+
+   private static int closestCluster(CentroidEngine engine, int i) {
+      double minDistance = Double.MAX_VALUE;
+      int closestCluster = 0;
+      for (int k = 0; k < engine.clusters; k++) {
+         double distance = engine.distance(i, k);
+         if (distance < minDistance) {
+            minDistance = distance;
+            closestCluster = k;
+         }
+      }
+      return closestCluster;
+   }
+
+   public DoubleMatrix2D getMeans() {
+      return means;
+   }
+
+   /**
+    * @return The partition, built from the labels when first requested
+    */
+   @Override
+   public DoubleMatrix2D getPartition() {
+      if (partition == null && labels != null) {
+         partition = Labels.toPartition(labels, clusters);
+      }
+      return partition;
+   }
+
+   /**
+    * @return The cluster assigned to each feature
+    */
+   public int[] getLabels() {
+      return labels;
+   }
+
+   public int getMaxIterations() {
+      return maxIterations;
+   }
+
+   public void setMaxIterations(int maxIterations) {
+      this.maxIterations = maxIterations;
+   }
+
+   public int getBatchSize() {
+      return batchSize;
+   }
+
+   public void setBatchSize(int batchSize) {
+      this.batchSize = batchSize;
+   }
+
+   public RandomGenerator getRandomGenerator() {
+      return randomGenerator;
+   }
+
+   public void setRandomGenerator(RandomGenerator random) {
+      this.randomGenerator = random;
+   }
+
+   public VectorVectorFunction getDistanceMeasure() {
+      return distanceMeasure;
+   }
+
+   public void setDistanceMeasure(VectorVectorFunction distanceMeasure) {
+      this.distanceMeasure = distanceMeasure;
+   }
+
+   @Override
+   public IterationListener getIterationListener() {
+      return iterationListener;
+   }
+
+   /**
+    * @param iterationListener The objective reported is that of the batch
+    */
+   @Override
+   public void setIterationListener(IterationListener iterationListener) {
+      this.iterationListener = iterationListener;
+   }
+}
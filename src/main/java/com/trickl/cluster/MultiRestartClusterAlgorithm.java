@@ -0,0 +1,196 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * Run a randomized clustering algorithm from several random starting points
+ * and keep the solution with the lowest objective.
+ * Each restart is seeded in turn from this algorithm's random generator, and
+ * ties go to the earliest restart, so the result for a given seed does not
+ * depend on the number of threads.
+ */
+public class MultiRestartClusterAlgorithm<T extends RandomizedClusterAlgorithm> implements RandomizedClusterAlgorithm {
+
+   /**
+    * Creates a configured algorithm for each restart
+    */
+   public interface Factory<T> {
+
+      T create();
+   }
+
+   private final Factory<T> factory;
+   private T best;
+   private int restarts = 10;
+   private int threads = Runtime.getRuntime().availableProcessors();
+   private RandomGenerator randomGenerator = new MersenneTwister();
+   private IterationListener iterationListener;
+
+   public MultiRestartClusterAlgorithm(Factory<T> factory) {
+      this.factory = factory;
+   }
+
+   @Override
+   public void cluster(final DoubleMatrix2D data, final int clusters) {
+      List<Callable<T>> runs = new ArrayList<Callable<T>>(restarts);
+      for (int r = 0; r < restarts; ++r) {
+         final T algorithm = factory.create();
+         algorithm.setRandomGenerator(new MersenneTwister(randomGenerator.nextLong()));
+         algorithm.setIterationListener(iterationListener);
+         runs.add(new Callable<T>() {
+
+            @Override
+            public T call() {
+               algorithm.cluster(data, clusters);
+               return algorithm;
+            }
+         });
+      }
+
+      best = null;
+      if (threads <= 1) {
+         for (Callable<T> run : runs) {
+            select(call(run));
+         }
+      } else {
+         ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, restarts)));
+         try {
+            List<Future<T>> futures = new ArrayList<Future<T>>(restarts);
+            for (Callable<T> run : runs) {
+               futures.add(executor.submit(run));
+            }
+
+            // Collect in restart order, releasing each losing solution
+            for (int r = 0; r < futures.size(); ++r) {
+               select(get(futures.get(r)));
+               futures.set(r, null);
+            }
+         } finally {
+            executor.shutdownNow();
+         }
+      }
+   }
+
+   private void select(T algorithm) {
+      if (best == null || algorithm.getObjective() < best.getObjective()) {
+         best = algorithm;
+      }
+   }
+
+   private static <T> T call(Callable<T> run) {
+      try {
+         return run.call();
+      } catch (RuntimeException ex) {
+         throw ex;
+      } catch (Exception ex) {
+         throw new IllegalStateException(ex);
+      }
+   }
+
+   private static <T> T get(Future<T> future) {
+      try {
+         return future.get();
+      } catch (InterruptedException ex) {
+         Thread.currentThread().interrupt();
+         throw new IllegalStateException("Interrupted while clustering.", ex);
+      } catch (ExecutionException ex) {
+         if (ex.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) ex.getCause();
+         } else if (ex.getCause() instanceof Error) {
+            throw (Error) ex.getCause();
+         }
+         throw new IllegalStateException(ex.getCause());
+      }
+   }
+
+   /**
+    * @return The restart with the lowest objective
+    */
+   public T getBest() {
+      return best;
+   }
+
+   @Override
+   public DoubleMatrix2D getPartition() {
+      return best == null ? null : best.getPartition();
+   }
+
+   @Override
+   public double getObjective() {
+      return best == null ? Double.NaN : best.getObjective();
+   }
+
+   public int getRestarts() {
+      return restarts;
+   }
+
+   public void setRestarts(int restarts) {
+      this.restarts = restarts;
+   }
+
+   public int getThreads() {
+      return threads;
+   }
+
+   /**
+    * @param threads The most restarts run at once, one runs them in the
+    * calling thread
+    */
+   public void setThreads(int threads) {
+      this.threads = threads;
+   }
+
+   @Override
+   public RandomGenerator getRandomGenerator() {
+      return randomGenerator;
+   }
+
+   @Override
+   public void setRandomGenerator(RandomGenerator random) {
+      this.randomGenerator = random;
+   }
+
+   @Override
+   public IterationListener getIterationListener() {
+      return iterationListener;
+   }
+
+   /**
+    * @param iterationListener Attached to every restart, the source of each
+    * event is the restart. Restarts run concurrently when there is more than
+    * one thread.
+    */
+   @Override
+   public void setIterationListener(IterationListener iterationListener) {
+      this.iterationListener = iterationListener;
+   }
+}
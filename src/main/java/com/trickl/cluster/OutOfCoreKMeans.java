@@ -0,0 +1,298 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.doublealgo.Statistic;
+import cern.colt.matrix.doublealgo.Statistic.VectorVectorFunction;
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import org.apache.commons.math3.distribution.UniformIntegerDistribution;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * K-Means over features that are too large to hold in memory, read from a
+ * file of packed rows (row-major doubles or floats, no header).
+ * Each iteration reads the file a chunk of rows at a time into a single
+ * reused direct buffer and makes a single sequential pass, assigning each row to its closest mean while summing the
+ * rows for the next means. Only the means and the assignments are kept on
+ * the heap, O(k*p + n) memory.
+ * The initial partition is drawn in the same way as the
+ * HardRandomPartitionGenerator, so the result matches KMeans given the same
+ * random generator.
+ */
+public class OutOfCoreKMeans {
+
+   public enum ValueType {
+      DOUBLE(8),
+      FLOAT(4);
+
+      private final int bytes;
+
+      private ValueType(int bytes) {
+         this.bytes = bytes;
+      }
+
+      public int getBytes() {
+         return bytes;
+      }
+   }
+
+   private DoubleMatrix2D means;
+   private int[] labels;
+   private int maxIterations = 1000;
+   private int chunkRows = 65536;
+   private ValueType valueType = ValueType.DOUBLE;
+   private ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
+   private RandomGenerator randomGenerator = new MersenneTwister();
+   private VectorVectorFunction distanceMeasure = Statistic.EUCLID;
+   private IterationListener iterationListener;
+
+   /**
+    * Cluster every row of a file.
+    * @param file A file of packed rows
+    * @param columns The dimensions of each row
+    * @param clusters The number of clusters
+    */
+   public void cluster(File file, int columns, int clusters) throws IOException {
+      RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+      try {
+         FileChannel channel = randomAccessFile.getChannel();
+         long rowBytes = (long) columns * valueType.getBytes();
+         cluster(channel, 0, channel.size() / rowBytes, columns, clusters);
+      } finally {
+         randomAccessFile.close();
+      }
+   }
+
+   /**
+    * Cluster a contiguous block of rows in a channel.
+    * @param channel A channel open for reading
+    * @param position The offset in bytes of the first row
+    * @param rows The number of rows
+    * @param columns The dimensions of each row
+    * @param clusters The number of clusters
+    */
+   public void cluster(FileChannel channel, long position, long rows, int columns, int clusters) throws IOException {
+      if (rows > Integer.MAX_VALUE) {
+         throw new IllegalArgumentException("At most " + Integer.MAX_VALUE + " rows can be assigned.");
+      }
+      if (clusters < 1) {
+         throw new IllegalArgumentException("At least one cluster is required.");
+      }
+
+      final int n = (int) rows;
+      final int p = columns;
+      final int rowBytes = p * valueType.getBytes();
+      final int rowsPerChunk = Math.max(1, Math.min(chunkRows, Integer.MAX_VALUE / rowBytes));
+      final DistanceKernel distanceKernel = DistanceKernel.forMeasure(distanceMeasure);
+
+      // Sums of the features in each cluster, followed by the cluster size
+      double[] sums = new double[clusters * (p + 1)];
+      double[] centroids = new double[clusters * p];
+      double[] values = new double[rowsPerChunk * p];
+      float[] floatValues = valueType == ValueType.FLOAT ? new float[rowsPerChunk * p] : null;
+      ByteBuffer buffer = ByteBuffer.allocateDirect(rowsPerChunk * rowBytes).order(byteOrder);
+
+      // Initialise the partition randomly
+      labels = new int[n];
+      UniformIntegerDistribution uniform = new UniformIntegerDistribution(randomGenerator, 0, clusters - 1);
+      for (int i = 0; i < n; ++i) {
+         labels[i] = uniform.sample();
+      }
+
+      for (int from = 0; from < n; from += rowsPerChunk) {
+         int to = Math.min(n, from + rowsPerChunk);
+         readRows(channel, position, from, to, p, buffer, values, floatValues);
+         for (int i = from; i < to; ++i) {
+            addRow(sums, labels[i], values, (i - from) * p, p);
+         }
+      }
+
+      boolean changedPartition = true;
+
+      // Begin the main loop of alternating optimization
+      for (int itr = 0; itr < maxIterations && changedPartition; ++itr) {
+         // Update the means from the sums of the previous pass
+         long updateStart = iterationListener == null ? 0 : System.nanoTime();
+         for (int k = 0; k < clusters; ++k) {
+            double weight = sums[k * (p + 1) + p];
+            for (int j = 0; j < p; ++j) {
+               centroids[k * p + j] = sums[k * (p + 1) + j] / weight;
+            }
+         }
+         Arrays.fill(sums, 0);
+
+         // Update the partition, summing the features for the next means
+         long assignmentStart = iterationListener == null ? 0 : System.nanoTime();
+         double objective = 0;
+         int changes = 0;
+         for (int from = 0; from < n; from += rowsPerChunk) {
+            int to = Math.min(n, from + rowsPerChunk);
+            readRows(channel, position, from, to, p, buffer, values, floatValues);
+            for (int i = from; i < to; ++i) {
+               int offset = (i - from) * p;
+               double minDistance = Double.MAX_VALUE;
+               int closestCluster = 0;
+               for (int k = 0; k < clusters; ++k) {
+                  double distance = distanceKernel.apply(centroids, k * p, values, offset, p);
+                  if (distance < minDistance) {
+                     minDistance = distance;
+                     closestCluster = k;
+                  }
+               }
+
+               objective += minDistance * minDistance;
+               if (labels[i] != closestCluster) {
+                  changes++;
+               }
+               labels[i] = closestCluster;
+               addRow(sums, closestCluster, values, offset, p);
+            }
+         }
+         changedPartition = changes > 0;
+
+         if (iterationListener != null) {
+            long assignmentEnd = System.nanoTime();
+            iterationListener.iterationCompleted(new IterationEvent(this, itr, objective, changes, Double.NaN,
+                    (long) n * clusters, assignmentStart - updateStart, assignmentEnd - assignmentStart));
+         }
+      }
+
+      // The final means are those of the final partition
+      means = new DenseDoubleMatrix2D(p, clusters);
+      for (int k = 0; k < clusters; ++k) {
+         double weight = sums[k * (p + 1) + p];
+         for (int j = 0; j < p; ++j) {
+            means.setQuick(j, k, sums[k * (p + 1) + j] / weight);
+         }
+      }
+   }
+
+   private void readRows(FileChannel channel, long position, int from, int to, int p,
+           ByteBuffer buffer, double[] values, float[] floatValues) throws IOException {
+      long rowBytes = (long) p * valueType.getBytes();
+      long chunkPosition = position + from * rowBytes;
+      buffer.clear();
+      buffer.limit((int) ((to - from) * rowBytes));
+      while (buffer.hasRemaining()) {
+         if (channel.read(buffer, chunkPosition + buffer.position()) < 0) {
+            throw new EOFException("Expected " + (to - from) + " rows from row " + from + ".");
+         }
+      }
+      buffer.flip();
+      int length = (to - from) * p;
+      if (valueType == ValueType.FLOAT) {
+         buffer.asFloatBuffer().get(floatValues, 0, length);
+         for (int j = 0; j < length; ++j) {
+            values[j] = floatValues[j];
+         }
+      } else {
+         buffer.asDoubleBuffer().get(values, 0, length);
+      }
+   }
+
+   private static void addRow(double[] sums, int k, double[] values, int offset, int p) {
+      int sumOffset = k * (p + 1);
+      for (int j = 0; j < p; ++j) {
+         sums[sumOffset + j] += values[offset + j];
+      }
+      sums[sumOffset + p] += 1;
+   }
+
+   public DoubleMatrix2D getMeans() {
+      return means;
+   }
+
+   /**
+    * @return The cluster assigned to each row
+    */
+   public int[] getLabels() {
+      return labels;
+   }
+
+   public int getMaxIterations() {
+      return maxIterations;
+   }
+
+   public void setMaxIterations(int maxIterations) {
+      this.maxIterations = maxIterations;
+   }
+
+   public int getChunkRows() {
+      return chunkRows;
+   }
+
+   /**
+    * @param chunkRows The number of rows read at a time
+    */
+   public void setChunkRows(int chunkRows) {
+      this.chunkRows = chunkRows;
+   }
+
+   public ValueType getValueType() {
+      return valueType;
+   }
+
+   public void setValueType(ValueType valueType) {
+      this.valueType = valueType;
+   }
+
+   public ByteOrder getByteOrder() {
+      return byteOrder;
+   }
+
+   public void setByteOrder(ByteOrder byteOrder) {
+      this.byteOrder = byteOrder;
+   }
+
+   public RandomGenerator getRandomGenerator() {
+      return randomGenerator;
+   }
+
+   public void setRandomGenerator(RandomGenerator randomGenerator) {
+      this.randomGenerator = randomGenerator;
+   }
+
+   public VectorVectorFunction getDistanceMeasure() {
+      return distanceMeasure;
+   }
+
+   public void setDistanceMeasure(VectorVectorFunction distanceMeasure) {
+      this.distanceMeasure = distanceMeasure;
+   }
+
+   public IterationListener getIterationListener() {
+      return iterationListener;
+   }
+
+   public void setIterationListener(IterationListener iterationListener) {
+      this.iterationListener = iterationListener;
+   }
+}
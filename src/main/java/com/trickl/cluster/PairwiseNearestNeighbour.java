@@ -52,7 +52,10 @@ public class PairwiseNearestNeighbour implements ClusterAlgorithm {
 
    private DoubleMatrix2D codeVectors;
    private DoubleMatrix2D partition;
+   private int[] labels;
+   private int clusters;
    private VectorVectorFunction distanceMeasure = Statistic.EUCLID;
+   private IterationListener iterationListener;
 
    @Override
    public void cluster(DoubleMatrix2D data, int clusters) {
@@ -60,7 +63,6 @@ public class PairwiseNearestNeighbour implements ClusterAlgorithm {
       int n = data.rows(); // Number of features
       int p = data.columns(); // Dimensions of features
 
-      partition = new SparseDoubleMatrix2D(n, clusters);
       codeVectors = new DenseDoubleMatrix2D(n, p);
       codeVectors.assign(data);
 
@@ -86,8 +88,10 @@ public class PairwiseNearestNeighbour implements ClusterAlgorithm {
       }
 
       // Repetitively merge clusters until only the required number remain
+      double mergeCost = 0;
       for (int itr = 0; itr < n - clusters; itr++) {
 
+         long assignmentStart = iterationListener == null ? 0 : System.nanoTime();
          final BestMergePair bestMergePair = new BestMergePair();
          distances.forEachNonZero(new IntIntDoubleFunction() {
 
@@ -108,6 +112,10 @@ public class PairwiseNearestNeighbour implements ClusterAlgorithm {
          double n_b = nodeWeights.getQuick(bestMergePair.oldCluster);
 
          // Merge the nearest clusters
+         long updateStart = iterationListener == null ? 0 : System.nanoTime();
+         int changes = (int) n_b;
+         mergeCost += bestMergePair.distance;
+         long distanceEvaluations = 0;
          DoubleMatrix1D weightedMeanCodeVector = new SparseDoubleMatrix1D(p);
          weightedMeanCodeVector.assign(codeVectors.viewRow(bestMergePair.newCluster), Functions.plusMult(n_a / (n_a + n_b)));
          weightedMeanCodeVector.assign(codeVectors.viewRow(bestMergePair.oldCluster), Functions.plusMult(n_b / (n_a + n_b)));
@@ -137,6 +145,7 @@ public class PairwiseNearestNeighbour implements ClusterAlgorithm {
             int i = newClusterNeighbourIndices.elements()[t];
             int j = bestMergePair.newCluster;
             if (i != bestMergePair.oldCluster && i != j) {
+               distanceEvaluations++;
                n_a = nodeWeights.getQuick(i);
                n_b = nodeWeights.getQuick(j);
                double distance = ((n_a * n_b) / (n_a + n_b))
@@ -145,9 +154,16 @@ public class PairwiseNearestNeighbour implements ClusterAlgorithm {
                distances.setQuick(i, j, distance);
             }
          }
+
+         if (iterationListener != null) {
+            long updateEnd = System.nanoTime();
+            iterationListener.iterationCompleted(new IterationEvent(this, itr, mergeCost, changes, Double.NaN,
+                    distanceEvaluations, updateEnd - updateStart, updateStart - assignmentStart));
+         }
       }
 
-      // Finally use the merge map to figure out the partition
+      // Finally use the merge map to figure out the labels
+      labels = new int[n];
       Map<Integer, Integer> clusterIndicies = new HashMap<Integer, Integer>();
       int clusterIndex = 0;
       for (int i = 0; i < n; ++i) {
@@ -161,12 +177,42 @@ public class PairwiseNearestNeighbour implements ClusterAlgorithm {
             clusterIndicies.put(j, clusterIndex++);
          }
 
-         partition.setQuick(i, clusterIndicies.get(j), 1.);
+         labels[i] = clusterIndicies.get(j);
       }
+
+      this.clusters = clusters;
+      partition = null;
    }
 
+   /**
+    * @return The partition, built from the labels when first requested
+    */
    @Override
    public DoubleMatrix2D getPartition() {
+      if (partition == null && labels != null) {
+         partition = Labels.toPartition(labels, clusters);
+      }
       return partition;
    }
+
+   /**
+    * @return The cluster assigned to each feature
+    */
+   public int[] getLabels() {
+      return labels;
+   }
+
+   @Override
+   public IterationListener getIterationListener() {
+      return iterationListener;
+   }
+
+   /**
+    * @param iterationListener Each merge is an iteration, with the total cost of the
+    * merges so far as the objective
+    */
+   @Override
+   public void setIterationListener(IterationListener iterationListener) {
+      this.iterationListener = iterationListener;
+   }
 }
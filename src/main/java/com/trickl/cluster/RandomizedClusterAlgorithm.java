@@ -0,0 +1,39 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * A clustering algorithm that minimises an objective from a random starting
+ * point, so that different random generators may give different solutions.
+ */
+public interface RandomizedClusterAlgorithm extends ClusterAlgorithm {
+
+   /**
+    * @return The objective reached by the last call to cluster, lower is better
+    */
+   double getObjective();
+
+   RandomGenerator getRandomGenerator();
+
+   void setRandomGenerator(RandomGenerator random);
+}
@@ -0,0 +1,91 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Splits the rows of a data set into fixed size chunks so that row-wise work
+ * can be shared across a fork/join pool.
+ * The chunk boundaries depend only on the chunk size, never on the number of
+ * threads, so partial results merged in chunk order are reproducible.
+ */
+final class RowChunks {
+
+   interface ChunkFunction<T> {
+
+      T apply(int from, int to);
+   }
+
+   private RowChunks() {
+   }
+
+   /**
+    * @param forkJoinPool The pool to run on, or null to run each chunk in turn on the calling thread
+    * @param rows The number of rows
+    * @param chunkSize The maximum number of rows in each chunk
+    * @param function Applied to each [from, to) range of rows
+    * @return The result of each chunk, in row order
+    */
+   static <T> List<T> map(ForkJoinPool forkJoinPool, int rows, int chunkSize, final ChunkFunction<T> function) {
+      if (rows <= chunkSize) {
+         return Collections.singletonList(function.apply(0, rows));
+      } else if (forkJoinPool == null) {
+         List<T> results = new ArrayList<T>((rows + chunkSize - 1) / chunkSize);
+         for (int from = 0; from < rows; from += chunkSize) {
+            results.add(function.apply(from, Math.min(rows, from + chunkSize)));
+         }
+         return results;
+      }
+
+      final List<RecursiveTask<T>> tasks = new ArrayList<RecursiveTask<T>>();
+      for (int from = 0; from < rows; from += chunkSize) {
+         final int chunkFrom = from;
+         final int chunkTo = Math.min(rows, from + chunkSize);
+         tasks.add(new RecursiveTask<T>() {
+
+            @Override
+            protected T compute() {
+               return function.apply(chunkFrom, chunkTo);
+            }
+         });
+      }
+
+      forkJoinPool.invoke(new RecursiveAction() {
+
+         @Override
+         protected void compute() {
+            invokeAll(tasks);
+         }
+      });
+
+      List<T> results = new ArrayList<T>(tasks.size());
+      for (RecursiveTask<T> task : tasks) {
+         results.add(task.getRawResult());
+      }
+      return results;
+   }
+}
@@ -0,0 +1,95 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.doublealgo.Statistic.VectorVectorFunction;
+
+/**
+ * The squared distances between features used to weight the choice of seeds,
+ * taken either from the features themselves or from a kernel matrix.
+ */
+abstract class SeedDistances {
+
+   abstract int size();
+
+   abstract double distanceSquared(int i, int j);
+
+   static SeedDistances forData(DoubleMatrix2D data, VectorVectorFunction distanceMeasure) {
+      final int n = data.rows();
+      final int p = data.columns();
+      final double[] values = new double[n * p];
+      for (int i = 0; i < n; i++) {
+         for (int j = 0; j < p; j++) {
+            values[i * p + j] = data.getQuick(i, j);
+         }
+      }
+
+      final DistanceKernel distanceKernel = DistanceKernel.forMeasure(distanceMeasure);
+      return new SeedDistances() {
+
+         @Override
+         int size() {
+            return n;
+         }
+
+         @Override
+         double distanceSquared(int i, int j) {
+            double distance = distanceKernel.apply(values, i * p, values, j * p, p);
+            return distance * distance;
+         }
+      };
+   }
+
+   static SeedDistances forKernel(final DoubleMatrix2D kernel) {
+      return new SeedDistances() {
+
+         @Override
+         int size() {
+            return kernel.rows();
+         }
+
+         // |phi(x_i) - phi(x_j)|^2 = K(i, i) + K(j, j) - 2 K(i, j)
+         @Override
+         double distanceSquared(int i, int j) {
+            return Math.max(0, kernel.getQuick(i, i) + kernel.getQuick(j, j) - 2. * kernel.getQuick(i, j));
+         }
+      };
+   }
+
+   /**
+    * Label each feature with its closest seed.
+    */
+   void assignToSeeds(int[] labels, int[] seeds) {
+      for (int i = 0; i < size(); i++) {
+         double minDistance = Double.MAX_VALUE;
+         int closestCluster = 0;
+         for (int k = 0; k < seeds.length; k++) {
+            double distance = distanceSquared(i, seeds[k]);
+            if (distance < minDistance) {
+               minDistance = distance;
+               closestCluster = k;
+            }
+         }
+         labels[i] = closestCluster;
+      }
+   }
+}
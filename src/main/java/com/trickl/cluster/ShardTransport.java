@@ -0,0 +1,41 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The connection from the ShardedKMeans coordinator to one KMeansShard,
+ * which may be in the same process or elsewhere.
+ */
+public interface ShardTransport extends Closeable {
+
+   int rows() throws IOException;
+
+   int columns() throws IOException;
+
+   KMeansShard.PartialSums initialize(int[] labels, int clusters) throws IOException;
+
+   KMeansShard.PartialSums assign(double[] centroids, int clusters) throws IOException;
+
+   int[] getLabels() throws IOException;
+}
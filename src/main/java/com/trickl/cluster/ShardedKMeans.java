@@ -0,0 +1,244 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.math3.distribution.UniformIntegerDistribution;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * K-Means over rows split into shards, each held by a KMeansShard that may
+ * live in another process. Each iteration the coordinator sends the means
+ * to every shard, which assigns its rows and replies with the per-cluster
+ * sums and counts, and the merged sums give the next means. Only the means
+ * cross the transport each iteration, O(k*p) per shard.
+ * The initial partition is drawn in the same way as the
+ * HardRandomPartitionGenerator over the shards in order, so the result
+ * matches KMeans on the concatenated rows given the same random generator.
+ */
+public class ShardedKMeans {
+
+   private DoubleMatrix2D means;
+   private int[] labels;
+   private double objective;
+   private int maxIterations = 1000;
+   private RandomGenerator randomGenerator = new MersenneTwister();
+   private IterationListener iterationListener;
+
+   /**
+    * Cluster the rows of every shard.
+    * @param shards The transports to each shard, in order of their rows
+    * @param clusters The number of clusters
+    */
+   public void cluster(List<? extends ShardTransport> shards, final int clusters) throws IOException {
+      if (clusters < 1) {
+         throw new IllegalArgumentException("At least one cluster is required.");
+      }
+      if (shards.isEmpty()) {
+         throw new IllegalArgumentException("At least one shard is required.");
+      }
+
+      int n = 0;
+      int p = shards.get(0).columns();
+      int[] shardRows = new int[shards.size()];
+      for (int s = 0; s < shards.size(); ++s) {
+         if (shards.get(s).columns() != p) {
+            throw new IllegalArgumentException("Every shard must have " + p + " columns.");
+         }
+         shardRows[s] = shards.get(s).rows();
+         n += shardRows[s];
+      }
+
+      ExecutorService executor = Executors.newFixedThreadPool(shards.size());
+      try {
+         // Initialise the partition randomly
+         UniformIntegerDistribution uniform = new UniformIntegerDistribution(randomGenerator, 0, clusters - 1);
+         List<Callable<KMeansShard.PartialSums>> initializations = new ArrayList<Callable<KMeansShard.PartialSums>>();
+         for (int s = 0; s < shards.size(); ++s) {
+            final ShardTransport shard = shards.get(s);
+            final int[] shardLabels = new int[shardRows[s]];
+            for (int i = 0; i < shardLabels.length; ++i) {
+               shardLabels[i] = uniform.sample();
+            }
+            initializations.add(new Callable<KMeansShard.PartialSums>() {
+
+               @Override
+               public KMeansShard.PartialSums call() throws IOException {
+                  return shard.initialize(shardLabels, clusters);
+               }
+            });
+         }
+         KMeansShard.PartialSums sums = merge(executor, initializations);
+
+         final double[] centroids = new double[clusters * p];
+         boolean changedPartition = true;
+         objective = Double.NaN;
+
+         // Begin the main loop of alternating optimization
+         for (int itr = 0; itr < maxIterations && changedPartition; ++itr) {
+            // Update the means from the sums of the previous pass
+            long updateStart = iterationListener == null ? 0 : System.nanoTime();
+            divideSums(sums, centroids);
+
+            // Each shard updates its partition, summing its rows for the next means
+            long assignmentStart = iterationListener == null ? 0 : System.nanoTime();
+            List<Callable<KMeansShard.PartialSums>> assignments = new ArrayList<Callable<KMeansShard.PartialSums>>();
+            for (final ShardTransport shard : shards) {
+               assignments.add(new Callable<KMeansShard.PartialSums>() {
+
+                  @Override
+                  public KMeansShard.PartialSums call() throws IOException {
+                     return shard.assign(centroids, clusters);
+                  }
+               });
+            }
+            sums = merge(executor, assignments);
+            objective = sums.getObjective();
+            changedPartition = sums.getChanges() > 0;
+
+            if (iterationListener != null) {
+               long assignmentEnd = System.nanoTime();
+               iterationListener.iterationCompleted(new IterationEvent(this, itr, objective, sums.getChanges(),
+                       Double.NaN, (long) n * clusters, assignmentStart - updateStart, assignmentEnd - assignmentStart));
+            }
+         }
+
+         // The final means are those of the final partition
+         divideSums(sums, centroids);
+         means = new DenseDoubleMatrix2D(p, clusters);
+         for (int k = 0; k < clusters; ++k) {
+            for (int j = 0; j < p; ++j) {
+               means.setQuick(j, k, centroids[k * p + j]);
+            }
+         }
+
+         labels = new int[n];
+         int offset = 0;
+         for (ShardTransport shard : shards) {
+            int[] shardLabels = shard.getLabels();
+            System.arraycopy(shardLabels, 0, labels, offset, shardLabels.length);
+            offset += shardLabels.length;
+         }
+      } finally {
+         executor.shutdown();
+      }
+   }
+
+   // Call every shard at once, merging the replies in shard order
+   private static KMeansShard.PartialSums merge(ExecutorService executor,
+           List<Callable<KMeansShard.PartialSums>> calls) throws IOException {
+      List<Future<KMeansShard.PartialSums>> futures;
+      try {
+         futures = executor.invokeAll(calls);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new IOException("Interrupted while waiting for the shards.", e);
+      }
+
+      KMeansShard.PartialSums merged = null;
+      for (Future<KMeansShard.PartialSums> future : futures) {
+         KMeansShard.PartialSums partialSums;
+         try {
+            partialSums = future.get();
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the shards.", e);
+         } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+               throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+         }
+
+         if (merged == null) {
+            merged = partialSums;
+         } else {
+            merged.merge(partialSums);
+         }
+      }
+      return merged;
+   }
+
+   private static void divideSums(KMeansShard.PartialSums sums, double[] centroids) {
+      int p = sums.getColumns();
+      double[] values = sums.getSums();
+      for (int k = 0; k < sums.getClusters(); ++k) {
+         double weight = sums.getCount(k);
+         for (int j = 0; j < p; ++j) {
+            centroids[k * p + j] = values[k * (p + 1) + j] / weight;
+         }
+      }
+   }
+
+   public DoubleMatrix2D getMeans() {
+      return means;
+   }
+
+   /**
+    * @return The cluster assigned to each row, the shards in order
+    */
+   public int[] getLabels() {
+      return labels;
+   }
+
+   /**
+    * @return The sum of squared distances to the closest means of the last pass,
+    * which are the returned means once the partition has converged but the
+    * previous means if the iteration limit stopped it first
+    */
+   public double getObjective() {
+      return objective;
+   }
+
+   public int getMaxIterations() {
+      return maxIterations;
+   }
+
+   public void setMaxIterations(int maxIterations) {
+      this.maxIterations = maxIterations;
+   }
+
+   public RandomGenerator getRandomGenerator() {
+      return randomGenerator;
+   }
+
+   public void setRandomGenerator(RandomGenerator randomGenerator) {
+      this.randomGenerator = randomGenerator;
+   }
+
+   public IterationListener getIterationListener() {
+      return iterationListener;
+   }
+
+   public void setIterationListener(IterationListener iterationListener) {
+      this.iterationListener = iterationListener;
+   }
+}
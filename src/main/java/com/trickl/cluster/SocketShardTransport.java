@@ -0,0 +1,107 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Calls a KMeansShard served by a KMeansShardServer over a socket.
+ */
+public class SocketShardTransport implements ShardTransport {
+
+   private final Socket socket;
+   private final DataInputStream in;
+   private final DataOutputStream out;
+
+   public SocketShardTransport(InetAddress address, int port) throws IOException {
+      this(new Socket(address, port));
+   }
+
+   public SocketShardTransport(Socket socket) throws IOException {
+      this.socket = socket;
+      socket.setTcpNoDelay(true);
+      this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+   }
+
+   @Override
+   public int rows() throws IOException {
+      out.writeByte(KMeansShardServer.ROWS);
+      reply();
+      return in.readInt();
+   }
+
+   @Override
+   public int columns() throws IOException {
+      out.writeByte(KMeansShardServer.COLUMNS);
+      reply();
+      return in.readInt();
+   }
+
+   @Override
+   public KMeansShard.PartialSums initialize(int[] labels, int clusters) throws IOException {
+      out.writeByte(KMeansShardServer.INITIALIZE);
+      out.writeInt(clusters);
+      KMeansShardServer.writeInts(out, labels);
+      reply();
+      return KMeansShardServer.readPartialSums(in);
+   }
+
+   @Override
+   public KMeansShard.PartialSums assign(double[] centroids, int clusters) throws IOException {
+      out.writeByte(KMeansShardServer.ASSIGN);
+      out.writeInt(clusters);
+      KMeansShardServer.writeDoubles(out, centroids);
+      reply();
+      return KMeansShardServer.readPartialSums(in);
+   }
+
+   @Override
+   public int[] getLabels() throws IOException {
+      out.writeByte(KMeansShardServer.LABELS);
+      reply();
+      return KMeansShardServer.readInts(in);
+   }
+
+   // Send the request and read the status of the reply
+   private void reply() throws IOException {
+      out.flush();
+      if (in.readByte() != KMeansShardServer.OK) {
+         throw new IOException("The shard failed: " + in.readUTF());
+      }
+   }
+
+   @Override
+   public void close() throws IOException {
+      try {
+         out.writeByte(KMeansShardServer.CLOSE);
+         out.flush();
+      } finally {
+         socket.close();
+      }
+   }
+}
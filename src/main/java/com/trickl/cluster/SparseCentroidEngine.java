@@ -0,0 +1,200 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+
+/**
+ * The working state of k-means over sparse rows.
+ * The means are held densely as the sum and size of each cluster, with the
+ * sums stored column by column so the sums of every cluster for one column are
+ * contiguous. A distance is then
+ * |x|^2 - 2 x.S / m + |S|^2 / m^2 for a cluster of size m with sum S,
+ * which costs one pass over the non-zeros of x.
+ * As in CentroidEngine, the sums and their squared norms are only adjusted
+ * for features that changed cluster.
+ */
+final class SparseCentroidEngine {
+
+   // Beyond this fraction of moved features, summing every feature is cheaper
+   private static final int FULL_UPDATE_DIVISOR = 4;
+
+   final int n; // Number of features
+   final int p; // Dimensions of features
+   final int clusters;
+   private final int[] rowPointers;
+   private final int[] columnIndices;
+   private final double[] values;
+
+   // The sum of each cluster in column-major order, and the size of each cluster
+   private final double[] sums;
+   private final double[] sizes;
+   private final double[] rowNorms;
+   private final double[] sumNorms;
+
+   // The cluster of each feature included in the cluster sums
+   private final int[] summedLabels;
+   private boolean labelledSums = false;
+
+   SparseCentroidEngine(SparseRows data, int clusters) {
+      this.n = data.rows();
+      this.p = data.columns();
+      this.clusters = clusters;
+      this.rowPointers = data.getRowPointers();
+      this.columnIndices = data.getColumnIndices();
+      this.values = data.getValues();
+      this.sums = new double[p * clusters];
+      this.sizes = new double[clusters];
+      this.rowNorms = new double[n];
+      this.sumNorms = new double[clusters];
+      this.summedLabels = new int[n];
+
+      for (int i = 0; i < n; i++) {
+         double norm = 0;
+         for (int t = rowPointers[i]; t < rowPointers[i + 1]; t++) {
+            norm += values[t] * values[t];
+         }
+         rowNorms[i] = norm;
+      }
+   }
+
+   /**
+    * Calculate the squared distance from feature i to the mean of every cluster.
+    * @param squaredDistances Receives the distance to each cluster, NaN for an empty cluster
+    */
+   void squaredDistances(int i, double[] squaredDistances) {
+      for (int k = 0; k < clusters; k++) {
+         squaredDistances[k] = 0;
+      }
+      for (int t = rowPointers[i]; t < rowPointers[i + 1]; t++) {
+         double value = values[t];
+         int offset = columnIndices[t] * clusters;
+         for (int k = 0; k < clusters; k++) {
+            squaredDistances[k] += value * sums[offset + k];
+         }
+      }
+      for (int k = 0; k < clusters; k++) {
+         squaredDistances[k] = squaredDistance(i, k, squaredDistances[k]);
+      }
+   }
+
+   /**
+    * @return The squared distance from feature i to the mean of cluster k
+    */
+   double squaredDistance(int i, int k) {
+      double product = 0;
+      for (int t = rowPointers[i]; t < rowPointers[i + 1]; t++) {
+         product += values[t] * sums[columnIndices[t] * clusters + k];
+      }
+      return squaredDistance(i, k, product);
+   }
+
+   // Rounding can take the difference a little below zero
+   private double squaredDistance(int i, int k, double product) {
+      double size = sizes[k];
+      return Math.max(0, rowNorms[i] - 2 * product / size + sumNorms[k] / (size * size));
+   }
+
+   /**
+    * Calculate the mean of each cluster of a hard partition.
+    * @param labels The cluster of each feature
+    */
+   void updateMeans(int[] labels) {
+      int moved = 0;
+      if (labelledSums) {
+         for (int i = 0; i < n; i++) {
+            if (labels[i] != summedLabels[i]) {
+               moved++;
+            }
+         }
+      }
+
+      if (!labelledSums || moved > n / FULL_UPDATE_DIVISOR) {
+         for (int s = 0; s < sums.length; s++) {
+            sums[s] = 0;
+         }
+         for (int k = 0; k < clusters; k++) {
+            sizes[k] = 0;
+         }
+         for (int i = 0; i < n; i++) {
+            addFeature(i, labels[i], 1);
+         }
+
+         // Summing every dimension once is already the cost of clearing the sums
+         for (int k = 0; k < clusters; k++) {
+            sumNorms[k] = 0;
+         }
+         for (int j = 0; j < p; j++) {
+            int offset = j * clusters;
+            for (int k = 0; k < clusters; k++) {
+               sumNorms[k] += sums[offset + k] * sums[offset + k];
+            }
+         }
+      } else if (moved > 0) {
+         // Move each feature's contribution from its old cluster to its new one,
+         // adjusting the squared norms of the sums from its non-zeros
+         for (int i = 0; i < n; i++) {
+            if (labels[i] != summedLabels[i]) {
+               addFeature(i, summedLabels[i], -1);
+               addFeature(i, labels[i], 1);
+            }
+         }
+
+         // Clear the rounding error left in a cluster that has emptied
+         for (int k = 0; k < clusters; k++) {
+            if (sizes[k] == 0) {
+               for (int j = 0; j < p; j++) {
+                  sums[j * clusters + k] = 0;
+               }
+               sumNorms[k] = 0;
+            }
+         }
+      }
+
+      System.arraycopy(labels, 0, summedLabels, 0, n);
+      labelledSums = true;
+   }
+
+   // Add feature i, scaled by the weight, to cluster k and to the squared norm of its sum
+   private void addFeature(int i, int k, double weight) {
+      double sumNorm = sumNorms[k];
+      for (int t = rowPointers[i]; t < rowPointers[i + 1]; t++) {
+         int offset = columnIndices[t] * clusters + k;
+         double sum = sums[offset];
+         double newSum = sum + values[t] * weight;
+         sumNorm += (newSum - sum) * (newSum + sum);
+         sums[offset] = newSum;
+      }
+      sumNorms[k] = sumNorm;
+      sizes[k] += weight;
+   }
+
+   /**
+    * Copy the means into a p x clusters matrix, one column per cluster.
+    */
+   void copyMeansTo(DoubleMatrix2D means) {
+      for (int j = 0; j < p; j++) {
+         for (int k = 0; k < clusters; k++) {
+            means.setQuick(j, k, sums[j * clusters + k] / sizes[k]);
+         }
+      }
+   }
+}
@@ -0,0 +1,85 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+/**
+ * The rows of a sparse matrix in compressed sparse row (CSR) form.
+ * The non-zero values of row i are values[rowPointers[i], rowPointers[i + 1])
+ * and lie in the columns given by the same range of columnIndices.
+ * The arrays are used directly, not copied.
+ */
+public final class SparseRows {
+
+   private final int columns;
+   private final int[] rowPointers;
+   private final int[] columnIndices;
+   private final double[] values;
+
+   /**
+    * @param columns The number of columns
+    * @param rowPointers The start of each row in the column indices and values, followed by the number of non-zeros
+    * @param columnIndices The column of each non-zero value
+    * @param values The non-zero values
+    */
+   public SparseRows(int columns, int[] rowPointers, int[] columnIndices, double[] values) {
+      if (rowPointers.length == 0 || rowPointers[0] != 0) {
+         throw new IllegalArgumentException("Row pointers must start at zero.");
+      }
+      if (columnIndices.length != values.length || rowPointers[rowPointers.length - 1] != values.length) {
+         throw new IllegalArgumentException("Row pointers must end at the number of non-zero values.");
+      }
+      for (int i = 1; i < rowPointers.length; i++) {
+         if (rowPointers[i] < rowPointers[i - 1]) {
+            throw new IllegalArgumentException("Row pointers must not decrease.");
+         }
+      }
+      for (int t = 0; t < columnIndices.length; t++) {
+         if (columnIndices[t] < 0 || columnIndices[t] >= columns) {
+            throw new IllegalArgumentException("Column index " + columnIndices[t] + " is out of range.");
+         }
+      }
+
+      this.columns = columns;
+      this.rowPointers = rowPointers;
+      this.columnIndices = columnIndices;
+      this.values = values;
+   }
+
+   public int rows() {
+      return rowPointers.length - 1;
+   }
+
+   public int columns() {
+      return columns;
+   }
+
+   public int[] getRowPointers() {
+      return rowPointers;
+   }
+
+   public int[] getColumnIndices() {
+      return columnIndices;
+   }
+
+   public double[] getValues() {
+      return values;
+   }
+}
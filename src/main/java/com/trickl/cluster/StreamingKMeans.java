@@ -0,0 +1,162 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.doublealgo.Statistic;
+import cern.colt.matrix.doublealgo.Statistic.VectorVectorFunction;
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
+
+/**
+ * K-Means over a stream of features that are seen once and never stored.
+ * The first features observed become the initial means, after which each
+ * feature moves its closest mean towards it by 1 / (features in that cluster).
+ * Only the means and the cluster sizes are kept, O(k*p) memory.
+ * See: Some methods for classification and analysis of multivariate observations
+ * J. MacQueen, Fifth Berkeley Symposium on Mathematical Statistics and Probability, 1967
+ */
+public class StreamingKMeans {
+
+   private final int clusters;
+   private int p = -1; // Dimensions of features
+   private double[] centroids;
+   private long[] counts;
+   private long observations;
+   private VectorVectorFunction distanceMeasure = Statistic.EUCLID;
+   private DistanceKernel distanceKernel = DistanceKernel.EUCLID;
+
+   public StreamingKMeans(int clusters) {
+      if (clusters < 1) {
+         throw new IllegalArgumentException("At least one cluster is required.");
+      }
+      this.clusters = clusters;
+      this.counts = new long[clusters];
+   }
+
+   /**
+    * Move the closest mean towards a single feature.
+    * @param point The feature
+    * @return The cluster the feature was assigned to
+    */
+   public synchronized int observe(double[] point) {
+      if (p < 0) {
+         p = point.length;
+         centroids = new double[clusters * p];
+      } else if (point.length != p) {
+         throw new IllegalArgumentException("Expected a feature of " + p + " dimensions.");
+      }
+
+      observations++;
+
+      // Seed the means with the first features seen
+      for (int k = 0; k < clusters; k++) {
+         if (counts[k] == 0) {
+            System.arraycopy(point, 0, centroids, k * p, p);
+            counts[k] = 1;
+            return k;
+         }
+      }
+
+      double minDistance = Double.MAX_VALUE;
+      int closestCluster = 0;
+      for (int k = 0; k < clusters; k++) {
+         double distance = distanceKernel.apply(centroids, k * p, point, 0, p);
+         if (distance < minDistance) {
+            minDistance = distance;
+            closestCluster = k;
+         }
+      }
+
+      counts[closestCluster]++;
+      double learningRate = 1.0 / counts[closestCluster];
+      int offset = closestCluster * p;
+      for (int j = 0; j < p; j++) {
+         centroids[offset + j] += learningRate * (point[j] - centroids[offset + j]);
+      }
+      return closestCluster;
+   }
+
+   /**
+    * Observe each feature in turn.
+    * @return The cluster each feature was assigned to
+    */
+   public synchronized int[] observeBatch(double[][] points) {
+      int[] labels = new int[points.length];
+      for (int i = 0; i < points.length; i++) {
+         labels[i] = observe(points[i]);
+      }
+      return labels;
+   }
+
+   /**
+    * Observe each row of a matrix in turn.
+    * @return The cluster each row was assigned to
+    */
+   public synchronized int[] observeBatch(DoubleMatrix2D points) {
+      int[] labels = new int[points.rows()];
+      double[] point = new double[points.columns()];
+      for (int i = 0; i < points.rows(); i++) {
+         for (int j = 0; j < point.length; j++) {
+            point[j] = points.getQuick(i, j);
+         }
+         labels[i] = observe(point);
+      }
+      return labels;
+   }
+
+   /**
+    * @return A copy of the current means, one column per cluster. The mean of
+    * a cluster that has not yet been seeded is undefined (NaN).
+    */
+   public synchronized DoubleMatrix2D getMeans() {
+      DoubleMatrix2D means = new DenseDoubleMatrix2D(Math.max(p, 0), clusters);
+      for (int k = 0; k < clusters; k++) {
+         for (int j = 0; j < p; j++) {
+            means.setQuick(j, k, counts[k] == 0 ? Double.NaN : centroids[k * p + j]);
+         }
+      }
+      return means;
+   }
+
+   /**
+    * @return A copy of the number of features assigned to each cluster
+    */
+   public synchronized long[] getCounts() {
+      return counts.clone();
+   }
+
+   public synchronized long getObservations() {
+      return observations;
+   }
+
+   public int getClusters() {
+      return clusters;
+   }
+
+   public synchronized VectorVectorFunction getDistanceMeasure() {
+      return distanceMeasure;
+   }
+
+   public synchronized void setDistanceMeasure(VectorVectorFunction distanceMeasure) {
+      this.distanceMeasure = distanceMeasure;
+      this.distanceKernel = DistanceKernel.forMeasure(distanceMeasure);
+   }
+}
@@ -0,0 +1,160 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
+import java.util.Arrays;
+
+/**
+ * Collapses identical rows of the data into single rows weighted by the number
+ * of copies, so data with heavy duplication can be clustered as far fewer
+ * weighted features by a WeightedClusterAlgorithm.
+ * Rows are found in one pass with a hash table of the distinct rows, values
+ * are compared exactly, though 0.0 and -0.0 are treated as equal.
+ * The clustering of the distinct rows can then be expanded back to the data.
+ */
+public final class UniqueRows {
+
+   private final DoubleMatrix2D rows;
+   private final double[] weights;
+   private final int[] indices;
+
+   public UniqueRows(DoubleMatrix2D data) {
+      this(data, null);
+   }
+
+   /**
+    * @param data The features, one per row
+    * @param weights The weight of each feature, or null for unit weights
+    */
+   public UniqueRows(DoubleMatrix2D data, double[] weights) {
+      int n = data.rows(); // Number of features
+      int p = data.columns(); // Dimensions of features
+      CentroidEngine.checkWeights(weights, n);
+
+      // Open addressing over the first row of each distinct value
+      int capacity = Integer.highestOneBit(Math.max(2, 2 * n - 1)) << 1;
+      int[] table = new int[capacity];
+      Arrays.fill(table, -1);
+      int[] firstRows = new int[n];
+      double[] uniqueWeights = new double[n];
+      int distinct = 0;
+
+      indices = new int[n];
+      for (int i = 0; i < n; i++) {
+         int slot = hash(data, i) & (capacity - 1);
+         while (table[slot] >= 0 && !equalRows(data, firstRows[table[slot]], i)) {
+            slot = (slot + 1) & (capacity - 1);
+         }
+
+         if (table[slot] < 0) {
+            table[slot] = distinct;
+            firstRows[distinct++] = i;
+         }
+         indices[i] = table[slot];
+         uniqueWeights[table[slot]] += weights == null ? 1 : weights[i];
+      }
+
+      this.rows = new DenseDoubleMatrix2D(distinct, p);
+      for (int u = 0; u < distinct; u++) {
+         for (int j = 0; j < p; j++) {
+            rows.setQuick(u, j, data.getQuick(firstRows[u], j));
+         }
+      }
+      this.weights = Arrays.copyOf(uniqueWeights, distinct);
+   }
+
+   private static int hash(DoubleMatrix2D data, int i) {
+      long hash = 1;
+      for (int j = 0; j < data.columns(); j++) {
+         hash = 31 * hash + bits(data.getQuick(i, j));
+      }
+
+      // Spread the high bits into the low bits used to index the table
+      int mixed = (int) (hash ^ (hash >>> 32));
+      return mixed ^ (mixed >>> 16);
+   }
+
+   private static boolean equalRows(DoubleMatrix2D data, int a, int b) {
+      for (int j = 0; j < data.columns(); j++) {
+         if (bits(data.getQuick(a, j)) != bits(data.getQuick(b, j))) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private static long bits(double value) {
+      return value == 0 ? 0 : Double.doubleToLongBits(value);
+   }
+
+   /**
+    * @return The distinct rows, in order of first appearance
+    */
+   public DoubleMatrix2D getRows() {
+      return rows;
+   }
+
+   /**
+    * @return The total weight of the copies of each distinct row
+    */
+   public double[] getWeights() {
+      return weights;
+   }
+
+   /**
+    * @return The distinct row of each row of the data
+    */
+   public int[] getIndices() {
+      return indices;
+   }
+
+   /**
+    * @param labels The cluster of each distinct row
+    * @return The cluster of each row of the data
+    */
+   public int[] expandLabels(int[] labels) {
+      int[] expanded = new int[indices.length];
+      for (int i = 0; i < indices.length; i++) {
+         expanded[i] = labels[indices[i]];
+      }
+      return expanded;
+   }
+
+   /**
+    * @param partition The partition of the distinct rows
+    * @return The partition of the rows of the data, of the same matrix type
+    */
+   public DoubleMatrix2D expandPartition(DoubleMatrix2D partition) {
+      int clusters = partition.columns();
+      DoubleMatrix2D expanded = partition.like(indices.length, clusters);
+      for (int i = 0; i < indices.length; i++) {
+         for (int k = 0; k < clusters; k++) {
+            double membership = partition.getQuick(indices[i], k);
+            if (membership != 0) {
+               expanded.setQuick(i, k, membership);
+            }
+         }
+      }
+      return expanded;
+   }
+}
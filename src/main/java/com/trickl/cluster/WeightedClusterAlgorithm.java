@@ -0,0 +1,45 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+
+/**
+ * A clustering algorithm that accepts a weight for each feature, a weight
+ * acting as that many copies of the feature. This allows a smaller weighted
+ * summary of the data, such as a coreset, to be clustered in its place.
+ */
+public interface WeightedClusterAlgorithm extends RandomizedClusterAlgorithm {
+
+   /**
+    * Cluster weighted features, getObjective then gives the weighted objective.
+    * @param data The features, one per row
+    * @param weights The non-negative weight of each feature, or null for unit weights
+    * @param clusters The number of clusters
+    */
+   void cluster(DoubleMatrix2D data, double[] weights, int clusters);
+
+   /**
+    * @param data Features, each of unit weight, that need not be those clustered
+    * @return The objective of the last clustering's prototypes on the features
+    */
+   double evaluateObjective(DoubleMatrix2D data);
+}
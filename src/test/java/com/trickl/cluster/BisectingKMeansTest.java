@@ -0,0 +1,133 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.doublealgo.Statistic;
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
+import com.trickl.dataset.GaussianCircles2D;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import org.junit.Assert;
+import org.junit.Test;
+import org.apache.commons.math3.random.MersenneTwister;
+
+public class BisectingKMeansTest {
+
+   public BisectingKMeansTest() {
+   }
+
+   @Test
+   public void ClusterGaussianCircles()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      // Set seed for repeatable results
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(3000);
+
+      BisectingKMeans bkm = new BisectingKMeans();
+      bkm.setRandomGenerator(new MersenneTwister(123456789));
+      bkm.setSplitTrials(3);
+      bkm.cluster(data, 8);
+
+      int[] labels = bkm.getLabels();
+      DoubleMatrix2D means = bkm.getMeans();
+      Assert.assertEquals(8, means.columns());
+
+      // The objective is that of the labels and means
+      double objective = 0;
+      for (int i = 0; i < data.rows(); ++i)
+      {
+         for (int j = 0; j < data.columns(); ++j)
+         {
+            double difference = data.getQuick(i, j) - means.getQuick(j, labels[i]);
+            objective += difference * difference;
+         }
+      }
+      Assert.assertEquals(objective, bkm.getObjective(), 1e-9 * objective);
+
+      // Every split divides its features and lowers the error
+      int leaves = 0;
+      Deque<ClusterTree> stack = new ArrayDeque<ClusterTree>();
+      stack.push(bkm.getTree());
+      Assert.assertEquals(data.rows(), bkm.getTree().getSize());
+      while (!stack.isEmpty())
+      {
+         ClusterTree node = stack.pop();
+         if (node.isLeaf())
+         {
+            for (int row : node.getRows())
+            {
+               Assert.assertEquals(node.getLabel(), labels[row]);
+            }
+            leaves++;
+         }
+         else
+         {
+            Assert.assertEquals(-1, node.getLabel());
+            Assert.assertEquals(node.getSize(), node.getLeft().getSize() + node.getRight().getSize());
+            Assert.assertTrue(node.getLeft().getObjective() + node.getRight().getObjective() <= node.getObjective());
+            stack.push(node.getLeft());
+            stack.push(node.getRight());
+         }
+      }
+      Assert.assertEquals(8, leaves);
+   }
+
+   @Test
+   public void StopAtIdenticalFeatures()
+   {
+      DoubleMatrix2D data = new DenseDoubleMatrix2D(30, 2);
+      for (int i = 0; i < data.rows(); ++i)
+      {
+         data.setQuick(i, 0, i % 3);
+         data.setQuick(i, 1, 2 * (i % 3));
+      }
+
+      BisectingKMeans bkm = new BisectingKMeans();
+      bkm.setRandomGenerator(new MersenneTwister(123456789));
+      bkm.setSplitTrials(5);
+      bkm.cluster(data, 5);
+
+      // Only three clusters can be told apart
+      Assert.assertEquals(3, bkm.getMeans().columns());
+      Assert.assertEquals(0, bkm.getObjective(), 0);
+      int[] labels = bkm.getLabels();
+      for (int i = 3; i < data.rows(); ++i)
+      {
+         Assert.assertEquals(labels[i - 3], labels[i]);
+      }
+   }
+
+   @Test(expected = IllegalStateException.class)
+   public void RequireEuclidean()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      DoubleMatrix2D data = gaussianCircles.generate(100);
+
+      // The error of a split is only a sum of squared errors for the Euclidean distance
+      BisectingKMeans bkm = new BisectingKMeans();
+      bkm.getKMeans().setDistanceMeasure(Statistic.MANHATTAN);
+      bkm.cluster(data, 3);
+   }
+}
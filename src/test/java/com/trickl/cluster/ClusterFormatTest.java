@@ -0,0 +1,187 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import com.trickl.dataset.GaussianCircles2D;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import org.junit.Assert;
+import org.junit.Test;
+import org.apache.commons.math3.random.MersenneTwister;
+
+public class ClusterFormatTest {
+
+   public ClusterFormatTest() {
+   }
+
+   @Test
+   public void ModelRoundTrip() throws IOException
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(500);
+
+      KMeans km = new KMeans();
+      km.setRandomGenerator(new MersenneTwister(123456789));
+      km.cluster(data, 5);
+
+      FuzzyCMeans fcm = new FuzzyCMeans();
+      fcm.setRandomGenerator(new MersenneTwister(123456789));
+      fcm.cluster(data, 4);
+
+      File file = File.createTempFile("model", ".bin");
+      file.deleteOnExit();
+      for (ClusterModel model : new ClusterModel[] {km.getModel(), fcm.getModel()})
+      {
+         ClusterFormat.writeModel(model, file);
+         ClusterModel read = ClusterFormat.readModel(file);
+         Assert.assertEquals(model.getClusters(), read.getClusters());
+         Assert.assertEquals(model.getDimensions(), read.getDimensions());
+         Assert.assertEquals(model.isFuzzy(), read.isFuzzy());
+         Assert.assertSame(model.getDistanceMeasure(), read.getDistanceMeasure());
+
+         double[] memberships = new double[model.getClusters()];
+         double[] readMemberships = new double[model.getClusters()];
+         for (int i = 0; i < data.rows(); ++i)
+         {
+            double[] point = new double[] {data.getQuick(i, 0), data.getQuick(i, 1)};
+            Assert.assertEquals(model.predict(point), read.predict(point));
+            model.predictMemberships(point, memberships);
+            read.predictMemberships(point, readMemberships);
+            Assert.assertArrayEquals(memberships, readMemberships, 0);
+         }
+      }
+   }
+
+   @Test
+   public void PartitionRoundTrip() throws IOException
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(500);
+
+      KMeans km = new KMeans();
+      km.setRandomGenerator(new MersenneTwister(123456789));
+      km.cluster(data, 5);
+
+      FuzzyCMeans fcm = new FuzzyCMeans();
+      fcm.setRandomGenerator(new MersenneTwister(123456789));
+      fcm.cluster(data, 4);
+
+      File file = File.createTempFile("partition", ".bin");
+      file.deleteOnExit();
+
+      ClusterFormat.writeLabels(km.getLabels(), 5, file);
+      MappedPartition labels = ClusterFormat.readPartition(file);
+      Assert.assertFalse(labels.isFuzzy());
+      Assert.assertEquals(data.rows(), labels.rows());
+      Assert.assertEquals(5, labels.clusters());
+      DoubleMatrix2D partition = labels.toMatrix();
+      for (int i = 0; i < data.rows(); ++i)
+      {
+         Assert.assertEquals(km.getLabels()[i], labels.getLabel(i));
+         Assert.assertEquals(km.getLabels()[i], labels.getLabels().get(i));
+         for (int k = 0; k < 5; ++k)
+         {
+            Assert.assertEquals(km.getPartition().getQuick(i, k), partition.getQuick(i, k), 0);
+         }
+      }
+
+      ClusterFormat.writeMemberships(fcm.getPartition(), file);
+      MappedPartition memberships = ClusterFormat.readPartition(file);
+      Assert.assertTrue(memberships.isFuzzy());
+      Assert.assertEquals(4, memberships.clusters());
+      for (int i = 0; i < data.rows(); ++i)
+      {
+         for (int k = 0; k < 4; ++k)
+         {
+            Assert.assertEquals(fcm.getPartition().getQuick(i, k), memberships.getMembership(i, k), 0);
+         }
+      }
+   }
+
+   @Test(expected = IOException.class)
+   public void RejectUnknownFile() throws IOException
+   {
+      File file = File.createTempFile("unknown", ".bin");
+      file.deleteOnExit();
+      FileOutputStream out = new FileOutputStream(file);
+      try
+      {
+         out.write(new byte[ClusterFormat.HEADER_BYTES]);
+      }
+      finally
+      {
+         out.close();
+      }
+      ClusterFormat.readPartition(file);
+   }
+
+   @Test
+   public void RejectCorruptHeaders() throws IOException
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      DoubleMatrix2D data = gaussianCircles.generate(100);
+
+      KMeans km = new KMeans();
+      km.setRandomGenerator(new MersenneTwister(123456789));
+      km.cluster(data, 5);
+
+      // The version, then negative sizes whose product still matches the length,
+      // then more clusters than the file holds, even once scaled past a long
+      int[][] corruptions = {{4, 0}, {12, -5, 16, -2}, {12, -1}, {12, 1000},
+         {12, Integer.MAX_VALUE, 16, Integer.MAX_VALUE}};
+      File file = File.createTempFile("corrupt", ".bin");
+      file.deleteOnExit();
+      for (int[] corruption : corruptions)
+      {
+         ClusterFormat.writeModel(km.getModel(), file);
+         RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+         try
+         {
+            for (int c = 0; c < corruption.length; c += 2)
+            {
+               randomAccessFile.seek(corruption[c]);
+               randomAccessFile.writeInt(Integer.reverseBytes(corruption[c + 1]));
+            }
+         }
+         finally
+         {
+            randomAccessFile.close();
+         }
+
+         try
+         {
+            ClusterFormat.readModel(file);
+            Assert.fail("Expected the header at offset " + corruption[0] + " to be rejected.");
+         }
+         catch (IOException e)
+         {
+         }
+      }
+   }
+}
@@ -0,0 +1,187 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.jet.math.Functions;
+import com.trickl.dataset.GaussianCircles2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Assert;
+import org.junit.Test;
+import org.apache.commons.math3.random.MersenneTwister;
+
+public class ClusterModelTest {
+
+   public ClusterModelTest() {
+   }
+
+   @Test
+   public void PredictTrainingLabels()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(1000);
+      double[] points = rows(data);
+
+      KMeans km = new KMeans();
+      km.setRandomGenerator(new MersenneTwister(123456789));
+      km.cluster(data, 5);
+
+      KMedoids kmedoids = new KMedoids();
+      kmedoids.setRandomGenerator(new MersenneTwister(123456789));
+      kmedoids.cluster(data, 5);
+
+      // At convergence every feature is labelled with its closest prototype
+      for (ClusterModel model : new ClusterModel[] {km.getModel(), kmedoids.getModel()})
+      {
+         Assert.assertFalse(model.isFuzzy());
+         int[] labels = new int[data.rows()];
+         model.predictBatch(points, labels);
+         Assert.assertEquals(labels[7], model.predict(new double[] {data.getQuick(7, 0), data.getQuick(7, 1)}));
+
+         double[] memberships = new double[5];
+         model.predictMemberships(new double[] {data.getQuick(7, 0), data.getQuick(7, 1)}, memberships);
+         Assert.assertEquals(1, memberships[labels[7]], 0);
+      }
+      int[] labels = new int[data.rows()];
+      km.getModel().predictBatch(points, labels);
+      Assert.assertArrayEquals(km.getLabels(), labels);
+      kmedoids.getModel().predictBatch(points, labels);
+      Assert.assertArrayEquals(kmedoids.getLabels(), labels);
+   }
+
+   @Test
+   public void PredictFuzzyMemberships()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(1000);
+
+      FuzzyCMeans fcm = new FuzzyCMeans();
+      fcm.setRandomGenerator(new MersenneTwister(123456789));
+      fcm.cluster(data, 4);
+
+      // The final memberships were calculated from the final means
+      ClusterModel model = fcm.getModel();
+      Assert.assertTrue(model.isFuzzy());
+      double[] memberships = new double[data.rows() * 4];
+      model.predictMembershipsBatch(rows(data), memberships);
+      for (int i = 0; i < data.rows(); ++i)
+      {
+         for (int k = 0; k < 4; ++k)
+         {
+            Assert.assertEquals(fcm.getPartition().getQuick(i, k), memberships[i * 4 + k], 1e-9);
+         }
+      }
+   }
+
+   @Test
+   public void PredictFuzzyMembershipsNearHardLimit()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(1000);
+
+      // With m = 1.05 each distance is raised to -20, which is out of range for
+      // distances of this scale unless scaled by the closest distance
+      data.assign(Functions.mult(1e20));
+      FuzzyCMeans fcm = new FuzzyCMeans();
+      fcm.setRandomGenerator(new MersenneTwister(123456789));
+      fcm.setFuzzification(1.05);
+      fcm.cluster(data, 4);
+
+      double[] memberships = new double[data.rows() * 4];
+      fcm.getModel().predictMembershipsBatch(rows(data), memberships);
+      for (int i = 0; i < data.rows(); ++i)
+      {
+         for (int k = 0; k < 4; ++k)
+         {
+            Assert.assertEquals(fcm.getPartition().getQuick(i, k), memberships[i * 4 + k], 1e-9);
+         }
+      }
+   }
+
+   @Test
+   public void ConcurrentPredictions() throws Exception
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(2000);
+      final double[] points = rows(data);
+
+      KMeans km = new KMeans();
+      km.setRandomGenerator(new MersenneTwister(123456789));
+      km.cluster(data, 8);
+      final ClusterModel model = km.getModel();
+
+      // Many threads share the one model
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      try
+      {
+         List<Future<int[]>> results = new ArrayList<Future<int[]>>();
+         for (int t = 0; t < 8; ++t)
+         {
+            results.add(executor.submit(new Callable<int[]>() {
+
+               @Override
+               public int[] call() {
+                  int[] labels = new int[points.length / 2];
+                  for (int repeat = 0; repeat < 20; ++repeat)
+                  {
+                     model.predictBatch(points, labels);
+                  }
+                  return labels;
+               }
+            }));
+         }
+         for (Future<int[]> result : results)
+         {
+            Assert.assertArrayEquals(km.getLabels(), result.get());
+         }
+      }
+      finally
+      {
+         executor.shutdown();
+      }
+   }
+
+   private static double[] rows(DoubleMatrix2D data)
+   {
+      double[] points = new double[data.rows() * data.columns()];
+      for (int i = 0; i < data.rows(); ++i)
+      {
+         for (int j = 0; j < data.columns(); ++j)
+         {
+            points[i * data.columns() + j] = data.getQuick(i, j);
+         }
+      }
+      return points;
+   }
+}
@@ -0,0 +1,93 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import com.trickl.dataset.GaussianCircles2D;
+import org.junit.Assert;
+import org.junit.Test;
+import org.apache.commons.math3.random.MersenneTwister;
+
+public class CoresetTest {
+
+   public CoresetTest() {
+   }
+
+   @Test
+   public void ClusterGaussianCircles()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(20000);
+
+      KMeans full = new KMeans();
+      full.setRandomGenerator(new MersenneTwister(123456789));
+      full.setPartitionGenerator(new KMeansPlusPlusPartitionGenerator());
+      full.cluster(data, 5);
+
+      Coreset coreset = new Coreset();
+      coreset.setRandomGenerator(new MersenneTwister(123456789));
+      coreset.setSize(1000);
+      KMeans km = new KMeans();
+      km.setRandomGenerator(new MersenneTwister(123456789));
+      km.setPartitionGenerator(new KMeansPlusPlusPartitionGenerator());
+      coreset.cluster(km, data, 5);
+
+      // The weights stand in for every feature
+      double totalWeight = 0;
+      for (double weight : coreset.getWeights())
+      {
+         totalWeight += weight;
+      }
+      Assert.assertTrue(coreset.getPoints().rows() <= 1000);
+      Assert.assertEquals(data.rows(), totalWeight, 0.1 * data.rows());
+
+      // The coreset objective estimates the full objective, which is close to clustering all the data
+      Assert.assertEquals(1, coreset.getObjectiveRatio(), 0.1);
+      Assert.assertEquals(km.evaluateObjective(data), coreset.getFullObjective(), 0);
+      Assert.assertTrue(coreset.getFullObjective() < 1.1 * full.getObjective());
+   }
+
+   @Test
+   public void ClusterWithFuzzyCMeansAndKMedoids()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(5000);
+
+      Coreset coreset = new Coreset();
+      coreset.setRandomGenerator(new MersenneTwister(123456789));
+      coreset.setSize(300);
+
+      FuzzyCMeans fcm = new FuzzyCMeans();
+      fcm.setRandomGenerator(new MersenneTwister(123456789));
+      coreset.cluster(fcm, data, 4);
+      Assert.assertEquals(1, coreset.getObjectiveRatio(), 0.2);
+
+      coreset.setObjectivePower(1);
+      KMedoids kmedoids = new KMedoids();
+      kmedoids.setRandomGenerator(new MersenneTwister(123456789));
+      coreset.cluster(kmedoids, data, 4);
+      Assert.assertEquals(1, coreset.getObjectiveRatio(), 0.2);
+   }
+}
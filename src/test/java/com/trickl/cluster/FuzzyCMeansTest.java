@@ -28,6 +28,10 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Assert;
 import org.junit.Test;
 import org.apache.commons.math3.random.MersenneTwister;
 
@@ -83,4 +87,137 @@ public class FuzzyCMeansTest {
          writer.close();
       }
    }
+
+   @Test
+   public void MembershipsSumToOne()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRadiusStd(0.20);
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      DoubleMatrix2D data = gaussianCircles.generate(500);
+
+      FuzzyCMeans fcm = new FuzzyCMeans();
+      fcm.setRandomGenerator(new MersenneTwister(123456789));
+      fcm.cluster(data, 4);
+
+      // The partition is the dense membership store itself
+      DoubleMatrix2D partition = fcm.getPartition();
+      Assert.assertSame(partition, fcm.getPartition());
+      for (int i = 0; i < data.rows(); ++i)
+      {
+         Assert.assertEquals(1, partition.viewRow(i).zSum(), 1e-9);
+      }
+   }
+
+   @Test
+   public void MembershipsMatchAnalyticSolution()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRadiusStd(0.20);
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      DoubleMatrix2D data = gaussianCircles.generate(500);
+
+      // The m = 2 path and the general power path, including the large
+      // exponents of m close to one
+      for (double fuzzification : new double[] {2.0, 1.7, 1.1})
+      {
+         FuzzyCMeans fcm = new FuzzyCMeans();
+         fcm.setRandomGenerator(new MersenneTwister(123456789));
+         fcm.setFuzzification(fuzzification);
+         fcm.cluster(data, 4);
+
+         // u = 1 / sum((d / d_j)^(1 / (m - 1))) with the final means
+         DoubleMatrix2D means = fcm.getMeans();
+         double[] distances = new double[4];
+         for (int i = 0; i < data.rows(); ++i)
+         {
+            for (int k = 0; k < 4; ++k)
+            {
+               double distanceSquared = 0;
+               for (int j = 0; j < data.columns(); ++j)
+               {
+                  double difference = data.getQuick(i, j) - means.getQuick(j, k);
+                  distanceSquared += difference * difference;
+               }
+               distances[k] = Math.sqrt(distanceSquared);
+            }
+            for (int k = 0; k < 4; ++k)
+            {
+               double sum = 0;
+               for (int j = 0; j < 4; ++j)
+               {
+                  sum += Math.pow(distances[k] / distances[j], 1.0 / (fuzzification - 1.0));
+               }
+               Assert.assertEquals(1 / sum, fcm.getPartition().getQuick(i, k), 1e-9);
+            }
+         }
+      }
+   }
+
+   @Test
+   public void BatchDistancesMatchDirect()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRadiusStd(0.20);
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      DoubleMatrix2D data = gaussianCircles.generate(3000);
+
+      FuzzyCMeans direct = new FuzzyCMeans();
+      direct.setRandomGenerator(new MersenneTwister(123456789));
+      direct.cluster(data, 6);
+
+      ForkJoinPool forkJoinPool = new ForkJoinPool(4);
+      try
+      {
+         FuzzyCMeans batch = new FuzzyCMeans();
+         batch.setRandomGenerator(new MersenneTwister(123456789));
+         batch.setBatchDistances(true);
+         batch.setForkJoinPool(forkJoinPool);
+         batch.cluster(data, 6);
+
+         Assert.assertEquals(direct.getObjective(), batch.getObjective(), 1e-6 * direct.getObjective());
+         for (int i = 0; i < data.rows(); ++i)
+         {
+            for (int k = 0; k < 6; ++k)
+            {
+               Assert.assertEquals(direct.getPartition().getQuick(i, k), batch.getPartition().getQuick(i, k), 1e-6);
+            }
+         }
+      }
+      finally
+      {
+         forkJoinPool.shutdown();
+      }
+   }
+
+   @Test
+   public void IterationListener()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRadiusStd(0.20);
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      DoubleMatrix2D data = gaussianCircles.generate(500);
+
+      final List<IterationEvent> events = new ArrayList<IterationEvent>();
+      FuzzyCMeans fcm = new FuzzyCMeans();
+      fcm.setRandomGenerator(new MersenneTwister(123456789));
+      fcm.setIterationListener(new IterationListener() {
+
+         @Override
+         public void iterationCompleted(IterationEvent event) {
+            events.add(event);
+         }
+      });
+      fcm.cluster(data, 3);
+
+      // The last step is the one that fell below epsilon
+      IterationEvent last = events.get(events.size() - 1);
+      Assert.assertTrue(last.getStepSize() < fcm.getEpsilon());
+      Assert.assertEquals(-1, last.getChanges());
+      Assert.assertEquals(fcm.getObjective(), last.getObjective(), 1e-9);
+      for (IterationEvent event : events.subList(0, events.size() - 1))
+      {
+         Assert.assertTrue(event.getStepSize() >= fcm.getEpsilon());
+      }
+   }
 }
@@ -22,11 +22,18 @@ package com.trickl.cluster;
 
 import com.trickl.cluster.KMeans;
 import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.doublealgo.Statistic;
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
+import cern.colt.matrix.impl.SparseDoubleMatrix2D;
 import com.trickl.dataset.GaussianCircles2D;
 import com.trickl.cluster.stats.Partition;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
 import org.junit.Test;
 import org.apache.commons.math3.random.MersenneTwister;
 
@@ -82,4 +89,486 @@ public class KMeansTest {
          writer.close();
       }
    }
+
+   @Test
+   public void AcceleratedAssignmentMatchesLloyd()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(300);
+
+      KMeans lloyd = new KMeans();
+      lloyd.setRandomGenerator(new MersenneTwister(123456789));
+      lloyd.cluster(data, 5);
+
+      for (KMeans.Assignment assignment : KMeans.Assignment.values())
+      {
+         KMeans km = new KMeans();
+         km.setRandomGenerator(new MersenneTwister(123456789));
+         km.setAssignment(assignment);
+         km.cluster(data, 5);
+
+         for (int i = 0; i < data.rows(); ++i)
+         {
+            for (int k = 0; k < 5; ++k)
+            {
+               Assert.assertEquals(assignment.name(), lloyd.getPartition().getQuick(i, k), km.getPartition().getQuick(i, k), 0);
+               Assert.assertEquals(assignment.name(), lloyd.getMeans().getQuick(0, k), km.getMeans().getQuick(0, k), 1e-12);
+            }
+         }
+      }
+   }
+
+   @Test
+   public void YinyangGroupsMatchLloyd()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(2000);
+
+      // k = 30 gives three groups by default, and k = 12 is split into four,
+      // so the group bounds filter the means rather than a single group
+      int[][] settings = {{30, 0}, {12, 4}};
+      for (int[] setting : settings)
+      {
+         int clusters = setting[0];
+         KMeans lloyd = new KMeans();
+         lloyd.setRandomGenerator(new MersenneTwister(123456789));
+         lloyd.setPartitionGenerator(new KMeansPlusPlusPartitionGenerator());
+         lloyd.cluster(data, clusters);
+
+         KMeans yinyang = new KMeans();
+         yinyang.setRandomGenerator(new MersenneTwister(123456789));
+         yinyang.setPartitionGenerator(new KMeansPlusPlusPartitionGenerator());
+         yinyang.setAssignment(KMeans.Assignment.YINYANG);
+         yinyang.setMeanGroups(setting[1]);
+         // Distance evaluations and iterations
+         final long[] metrics = new long[2];
+         yinyang.setIterationListener(new IterationListener() {
+
+            @Override
+            public void iterationCompleted(IterationEvent event) {
+               metrics[0] += event.getDistanceEvaluations();
+               metrics[1]++;
+            }
+         });
+         yinyang.cluster(data, clusters);
+
+         // The groups skip distances, yet give the same solution
+         Assert.assertTrue(metrics[0] < (long) data.rows() * clusters * metrics[1]);
+         Assert.assertArrayEquals(lloyd.getLabels(), yinyang.getLabels());
+         for (int k = 0; k < clusters; ++k)
+         {
+            for (int j = 0; j < data.columns(); ++j)
+            {
+               Assert.assertEquals(lloyd.getMeans().getQuick(j, k), yinyang.getMeans().getQuick(j, k), 1e-12);
+            }
+         }
+      }
+   }
+
+   @Test
+   public void ParallelMatchesSequential()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(5000);
+
+      KMeans sequential = new KMeans();
+      sequential.setRandomGenerator(new MersenneTwister(123456789));
+      sequential.cluster(data, 3);
+
+      ForkJoinPool forkJoinPool = new ForkJoinPool(4);
+      try
+      {
+         for (KMeans.Assignment assignment : KMeans.Assignment.values())
+         {
+            KMeans parallel = new KMeans();
+            parallel.setRandomGenerator(new MersenneTwister(123456789));
+            parallel.setAssignment(assignment);
+            parallel.setForkJoinPool(forkJoinPool);
+            parallel.cluster(data, 3);
+
+            for (int k = 0; k < 3; ++k)
+            {
+               for (int j = 0; j < data.columns(); ++j)
+               {
+                  Assert.assertEquals(assignment.name(), sequential.getMeans().getQuick(j, k), parallel.getMeans().getQuick(j, k), 0);
+               }
+
+               for (int i = 0; i < data.rows(); ++i)
+               {
+                  Assert.assertEquals(assignment.name(), sequential.getPartition().getQuick(i, k), parallel.getPartition().getQuick(i, k), 0);
+               }
+            }
+         }
+      }
+      finally
+      {
+         forkJoinPool.shutdown();
+      }
+   }
+
+   @Test
+   public void BatchDistancesMatchDirect()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(5000);
+
+      KMeans direct = new KMeans();
+      direct.setRandomGenerator(new MersenneTwister(123456789));
+      direct.cluster(data, 7);
+
+      ForkJoinPool forkJoinPool = new ForkJoinPool(4);
+      try
+      {
+         for (boolean singlePrecision : new boolean[] {false, true})
+         {
+            KMeans batch = new KMeans();
+            batch.setRandomGenerator(new MersenneTwister(123456789));
+            batch.setBatchDistances(true);
+            batch.setSinglePrecision(singlePrecision);
+            batch.setForkJoinPool(forkJoinPool);
+            batch.cluster(data, 7);
+
+            Assert.assertArrayEquals(direct.getLabels(), batch.getLabels());
+            Assert.assertEquals(direct.getObjective(), batch.getObjective(), 1e-5 * direct.getObjective());
+         }
+      }
+      finally
+      {
+         forkJoinPool.shutdown();
+      }
+   }
+
+   @Test
+   public void SeededPartitionGenerators()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(5000);
+
+      KMeansParallelPartitionGenerator sequentialGenerator = new KMeansParallelPartitionGenerator();
+      sequentialGenerator.setRandomGenerator(new MersenneTwister(123456789));
+      sequentialGenerator.setData(data, Statistic.EUCLID);
+      DoubleMatrix2D sequentialPartition = new SparseDoubleMatrix2D(data.rows(), 8);
+      sequentialGenerator.generate(sequentialPartition);
+
+      // The seeds must not depend on the number of threads
+      ForkJoinPool forkJoinPool = new ForkJoinPool(4);
+      try
+      {
+         KMeansParallelPartitionGenerator parallelGenerator = new KMeansParallelPartitionGenerator();
+         parallelGenerator.setRandomGenerator(new MersenneTwister(123456789));
+         parallelGenerator.setForkJoinPool(forkJoinPool);
+         parallelGenerator.setData(data, Statistic.EUCLID);
+         DoubleMatrix2D parallelPartition = new SparseDoubleMatrix2D(data.rows(), 8);
+         parallelGenerator.generate(parallelPartition);
+
+         for (int i = 0; i < data.rows(); ++i)
+         {
+            for (int k = 0; k < 8; ++k)
+            {
+               Assert.assertEquals(sequentialPartition.getQuick(i, k), parallelPartition.getQuick(i, k), 0);
+            }
+         }
+      }
+      finally
+      {
+         forkJoinPool.shutdown();
+      }
+
+      PartitionGenerator[] generators = {new KMeansPlusPlusPartitionGenerator(), new KMeansParallelPartitionGenerator()};
+      for (PartitionGenerator generator : generators)
+      {
+         KMeans km = new KMeans();
+         km.setRandomGenerator(new MersenneTwister(123456789));
+         km.setPartitionGenerator(generator);
+         km.cluster(data, 8);
+
+         // Well spread seeds leave no cluster empty
+         DoubleMatrix2D partition = km.getPartition();
+         for (int k = 0; k < 8; ++k)
+         {
+            Assert.assertTrue(partition.viewColumn(k).zSum() > 0);
+         }
+      }
+   }
+
+   @Test
+   public void SeedingUsesDistanceMeasure()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(1000);
+
+      DataPartitionGenerator[] generators = {new KMeansPlusPlusPartitionGenerator(), new KMeansParallelPartitionGenerator()};
+      for (DataPartitionGenerator generator : generators)
+      {
+         // With no iterations the labels are those of the seeding
+         KMeans km = new KMeans();
+         km.setRandomGenerator(new MersenneTwister(123456789));
+         km.setDistanceMeasure(Statistic.MANHATTAN);
+         km.setPartitionGenerator(generator);
+         km.setMaxIterations(0);
+         km.cluster(data, 6);
+
+         generator.setData(data, Statistic.MANHATTAN);
+         generator.setRandomGenerator(new MersenneTwister(123456789));
+         int[] labels = new int[data.rows()];
+         ((HardPartitionGenerator) generator).generateLabels(labels, 6);
+         Assert.assertArrayEquals(labels, km.getLabels());
+
+         // The data is released once the partition is generated
+         try
+         {
+            ((HardPartitionGenerator) generator).generateLabels(labels, 6);
+            Assert.fail("Expected the data to have been released.");
+         }
+         catch (IllegalStateException e)
+         {
+         }
+      }
+   }
+
+   @Test
+   public void GeneratedLabelsMatchPartition()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(1000);
+
+      // Labelling directly draws the same partition as filling a matrix
+      HardPartitionGenerator[] generators = {new HardRandomPartitionGenerator(),
+         new KMeansPlusPlusPartitionGenerator(), new KMeansParallelPartitionGenerator()};
+      for (HardPartitionGenerator generator : generators)
+      {
+         if (generator instanceof DataPartitionGenerator)
+         {
+            ((DataPartitionGenerator) generator).setData(data, Statistic.EUCLID);
+         }
+         generator.setRandomGenerator(new MersenneTwister(123456789));
+         DoubleMatrix2D partition = new SparseDoubleMatrix2D(data.rows(), 6);
+         generator.generate(partition);
+
+         if (generator instanceof DataPartitionGenerator)
+         {
+            ((DataPartitionGenerator) generator).setData(data, Statistic.EUCLID);
+         }
+         generator.setRandomGenerator(new MersenneTwister(123456789));
+         int[] labels = new int[data.rows()];
+         generator.generateLabels(labels, 6);
+         for (int i = 0; i < data.rows(); ++i)
+         {
+            Assert.assertEquals(1, partition.getQuick(i, labels[i]), 0);
+            Assert.assertEquals(1, partition.viewRow(i).zSum(), 0);
+         }
+      }
+   }
+
+   @Test
+   public void MeansMatchPartition()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(5000);
+
+      KMeans km = new KMeans();
+      km.setRandomGenerator(new MersenneTwister(123456789));
+      km.cluster(data, 20);
+
+      // The incrementally maintained means agree with a direct calculation
+      DoubleMatrix2D partition = km.getPartition();
+      for (int k = 0; k < partition.columns(); ++k)
+      {
+         double count = partition.viewColumn(k).zSum();
+         for (int j = 0; j < data.columns(); ++j)
+         {
+            double sum = 0;
+            for (int i = 0; i < data.rows(); ++i)
+            {
+               sum += partition.getQuick(i, k) * data.getQuick(i, j);
+            }
+            Assert.assertEquals(sum / count, km.getMeans().getQuick(j, k), 1e-9);
+         }
+      }
+   }
+
+   @Test
+   public void LabelsMatchPartition()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(500);
+
+      KMeans km = new KMeans();
+      km.setRandomGenerator(new MersenneTwister(123456789));
+      km.cluster(data, 5);
+
+      // The partition is built from the labels, one unit membership per row
+      int[] labels = km.getLabels();
+      DoubleMatrix2D partition = km.getPartition();
+      Assert.assertEquals(data.rows(), labels.length);
+      Assert.assertEquals(5, partition.columns());
+      Assert.assertSame(partition, km.getPartition());
+      for (int i = 0; i < data.rows(); ++i)
+      {
+         Assert.assertEquals(1, partition.viewRow(i).zSum(), 0);
+         Assert.assertEquals(1, partition.getQuick(i, labels[i]), 0);
+      }
+   }
+
+   @Test
+   public void SinglePrecision()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(1000);
+
+      KMeans lloyd = new KMeans();
+      lloyd.setRandomGenerator(new MersenneTwister(123456789));
+      lloyd.cluster(data, 5);
+
+      KMeans singleLloyd = new KMeans();
+      singleLloyd.setRandomGenerator(new MersenneTwister(123456789));
+      singleLloyd.setSinglePrecision(true);
+      singleLloyd.cluster(data, 5);
+      Assert.assertEquals(lloyd.getObjective(), singleLloyd.getObjective(), 1e-5 * lloyd.getObjective());
+
+      // The accelerated assignments agree exactly with Lloyd in single precision too
+      for (KMeans.Assignment assignment : KMeans.Assignment.values())
+      {
+         KMeans km = new KMeans();
+         km.setRandomGenerator(new MersenneTwister(123456789));
+         km.setAssignment(assignment);
+         km.setSinglePrecision(true);
+         km.cluster(data, 5);
+         Assert.assertArrayEquals(assignment.name(), singleLloyd.getLabels(), km.getLabels());
+      }
+
+      // With more clusters the kd-tree prunes with the same float means it scores
+      singleLloyd.setRandomGenerator(new MersenneTwister(123456789));
+      singleLloyd.cluster(data, 20);
+      KMeans filtering = new KMeans();
+      filtering.setRandomGenerator(new MersenneTwister(123456789));
+      filtering.setAssignment(KMeans.Assignment.FILTERING);
+      filtering.setSinglePrecision(true);
+      filtering.cluster(data, 20);
+      Assert.assertArrayEquals(singleLloyd.getLabels(), filtering.getLabels());
+   }
+
+   @Test(expected = IllegalStateException.class)
+   public void SparseRowsRequireEuclidean()
+   {
+      SparseRows data = new SparseRows(3, new int[] {0, 1, 2}, new int[] {0, 2}, new double[] {1, 2});
+      KMeans km = new KMeans();
+      km.setDistanceMeasure(Statistic.MANHATTAN);
+      km.cluster(data, 2);
+   }
+
+   @Test
+   public void SparseRowsMatchDense()
+   {
+      // Sparse features of 10 non-zeros in 1000 dimensions, drawn near one of 4 centres
+      MersenneTwister random = new MersenneTwister(123456789);
+      int n = 400;
+      int p = 1000;
+      int nonZeros = 10;
+      DoubleMatrix2D dense = new DenseDoubleMatrix2D(n, p);
+      int[] rowPointers = new int[n + 1];
+      int[] columnIndices = new int[n * nonZeros];
+      double[] values = new double[n * nonZeros];
+      for (int i = 0; i < n; ++i)
+      {
+         int centre = i % 4;
+         for (int t = 0; t < nonZeros; ++t)
+         {
+            // Columns rise within each row, spaced so none repeat
+            int column = centre * 250 + t * 25 + random.nextInt(25);
+            double value = 1 + random.nextDouble();
+            columnIndices[i * nonZeros + t] = column;
+            values[i * nonZeros + t] = value;
+            dense.setQuick(i, column, value);
+         }
+         rowPointers[i + 1] = (i + 1) * nonZeros;
+      }
+
+      KMeans denseKMeans = new KMeans();
+      denseKMeans.setRandomGenerator(new MersenneTwister(123456789));
+      denseKMeans.cluster(dense, 4);
+
+      KMeans sparseKMeans = new KMeans();
+      sparseKMeans.setRandomGenerator(new MersenneTwister(123456789));
+      sparseKMeans.cluster(new SparseRows(p, rowPointers, columnIndices, values), 4);
+
+      Assert.assertArrayEquals(denseKMeans.getLabels(), sparseKMeans.getLabels());
+      Assert.assertEquals(denseKMeans.getObjective(), sparseKMeans.getObjective(), 1e-9 * denseKMeans.getObjective());
+      for (int k = 0; k < 4; ++k)
+      {
+         for (int j = 0; j < p; ++j)
+         {
+            Assert.assertEquals(denseKMeans.getMeans().getQuick(j, k), sparseKMeans.getMeans().getQuick(j, k), 1e-12);
+         }
+      }
+   }
+
+   @Test
+   public void IterationListener()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      final DoubleMatrix2D data = gaussianCircles.generate(2000);
+
+      long[] totalEvaluations = new long[2];
+      for (final KMeans.Assignment assignment : new KMeans.Assignment[] {KMeans.Assignment.LLOYD, KMeans.Assignment.ELKAN})
+      {
+         final List<IterationEvent> events = new ArrayList<IterationEvent>();
+         KMeans km = new KMeans();
+         km.setRandomGenerator(new MersenneTwister(123456789));
+         km.setAssignment(assignment);
+         km.setIterationListener(new IterationListener() {
+
+            @Override
+            public void iterationCompleted(IterationEvent event) {
+               events.add(event);
+            }
+         });
+         km.cluster(data, 10);
+
+         // Iterations are reported in order until the partition stops changing
+         Assert.assertFalse(events.isEmpty());
+         double lastObjective = Double.MAX_VALUE;
+         for (int itr = 0; itr < events.size(); ++itr)
+         {
+            IterationEvent event = events.get(itr);
+            Assert.assertSame(km, event.getSource());
+            Assert.assertEquals(itr, event.getIteration());
+            Assert.assertTrue(event.getObjective() <= lastObjective + 1e-9);
+            Assert.assertTrue(event.getUpdateTime() >= 0 && event.getAssignmentTime() >= 0);
+            lastObjective = event.getObjective();
+            totalEvaluations[assignment.ordinal()] += event.getDistanceEvaluations();
+            if (assignment == KMeans.Assignment.LLOYD)
+            {
+               Assert.assertEquals(data.rows() * 10, event.getDistanceEvaluations());
+            }
+         }
+         Assert.assertEquals(0, events.get(events.size() - 1).getChanges());
+         Assert.assertEquals(km.getObjective(), lastObjective, 1e-9);
+      }
+
+      // The bounds save distance evaluations
+      Assert.assertTrue(totalEvaluations[1] < totalEvaluations[0]);
+   }
 }
@@ -23,11 +23,13 @@ package com.trickl.cluster;
 import com.trickl.cluster.KMedoids;
 import com.trickl.cluster.stats.Partition;
 import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
 import com.trickl.dataset.GaussianCircles2D;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import org.junit.Assert;
 import org.junit.Test;
 import org.apache.commons.math3.random.MersenneTwister;
 
@@ -83,4 +85,78 @@ public class KMedoidsTest {
          writer.close();
       }
    }
+
+   @Test
+   public void SinglePrecision()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(200);
+
+      KMedoids doubleKm = new KMedoids();
+      doubleKm.setRandomGenerator(new MersenneTwister(123456789));
+      doubleKm.cluster(data, 3);
+
+      KMedoids singleKm = new KMedoids();
+      singleKm.setRandomGenerator(new MersenneTwister(123456789));
+      singleKm.setSinglePrecision(true);
+      singleKm.cluster(data, 3);
+
+      // Rounding the features to floats leaves the medoids unchanged
+      for (int k = 0; k < 3; ++k)
+      {
+         Assert.assertEquals(doubleKm.getMedoids().getQuick(k), singleKm.getMedoids().getQuick(k));
+      }
+      Assert.assertArrayEquals(doubleKm.getLabels(), singleKm.getLabels());
+      Assert.assertEquals(doubleKm.getObjective(), singleKm.getObjective(), 1e-5 * doubleKm.getObjective());
+   }
+
+   @Test
+   public void IntegerWeightsMatchDuplicatedRows()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(100);
+      int n = data.rows();
+
+      // Each weight w repeats the feature w times, the copies after the originals
+      MersenneTwister random = new MersenneTwister(123456789);
+      double[] weights = new double[n];
+      int duplicatedRows = 0;
+      for (int i = 0; i < n; ++i)
+      {
+         weights[i] = 1 + random.nextInt(3);
+         duplicatedRows += (int) weights[i];
+      }
+      DoubleMatrix2D duplicated = new DenseDoubleMatrix2D(duplicatedRows, data.columns());
+      duplicated.viewPart(0, 0, n, data.columns()).assign(data);
+      int row = n;
+      for (int i = 0; i < n; ++i)
+      {
+         for (int copy = 1; copy < weights[i]; ++copy)
+         {
+            duplicated.viewRow(row++).assign(data.viewRow(i));
+         }
+      }
+
+      KMedoids weightedKm = new KMedoids();
+      weightedKm.setRandomGenerator(new MersenneTwister(123456789));
+      weightedKm.cluster(data, weights, 3);
+
+      KMedoids duplicatedKm = new KMedoids();
+      duplicatedKm.setRandomGenerator(new MersenneTwister(123456789));
+      duplicatedKm.cluster(duplicated, 3);
+
+      for (int k = 0; k < 3; ++k)
+      {
+         Assert.assertEquals(weightedKm.getMedoids().getQuick(k), duplicatedKm.getMedoids().getQuick(k));
+      }
+      for (int i = 0; i < n; ++i)
+      {
+         Assert.assertEquals(weightedKm.getLabels()[i], duplicatedKm.getLabels()[i]);
+      }
+      Assert.assertEquals(duplicatedKm.getObjective(), weightedKm.getObjective(), 1e-9 * duplicatedKm.getObjective());
+   }
 }
@@ -0,0 +1,122 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import com.trickl.dataset.GaussianCircles2D;
+import org.junit.Assert;
+import org.junit.Test;
+import org.apache.commons.math3.random.MersenneTwister;
+
+public class MiniBatchKMeansTest {
+
+   public MiniBatchKMeansTest() {
+   }
+
+   @Test
+   public void ClusterGaussianCircles()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      // Set seed for repeatable results
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(3000);
+
+      MiniBatchKMeans mbkm = new MiniBatchKMeans();
+      mbkm.setRandomGenerator(new MersenneTwister(123456789));
+      mbkm.cluster(data, 3);
+
+      KMeans km = new KMeans();
+      km.setRandomGenerator(new MersenneTwister(123456789));
+      km.cluster(data, 3);
+
+      // Every feature belongs to the closest of the mini-batch means
+      DoubleMatrix2D partition = mbkm.getPartition();
+      DoubleMatrix2D means = mbkm.getMeans();
+      for (int i = 0; i < data.rows(); ++i)
+      {
+         int closestCluster = 0;
+         for (int k = 1; k < 3; ++k)
+         {
+            if (distanceSquared(data, i, means, k) < distanceSquared(data, i, means, closestCluster))
+            {
+               closestCluster = k;
+            }
+         }
+         Assert.assertEquals(1, partition.getQuick(i, closestCluster), 0);
+      }
+
+      // A good enough solution, compared to passing over all the features
+      double miniBatchError = sumSquaredError(data, partition, means);
+      double fullError = sumSquaredError(data, km.getPartition(), km.getMeans());
+      System.out.println("Mini-batch SSE: " + miniBatchError + " Full SSE: " + fullError);
+      Assert.assertTrue(miniBatchError < 1.5 * fullError);
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void MoreClustersThanFeatures()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      DoubleMatrix2D data = gaussianCircles.generate(5);
+
+      MiniBatchKMeans mbkm = new MiniBatchKMeans();
+      mbkm.setRandomGenerator(new MersenneTwister(123456789));
+      mbkm.cluster(data, 6);
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void EmptyBatch()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      DoubleMatrix2D data = gaussianCircles.generate(100);
+
+      MiniBatchKMeans mbkm = new MiniBatchKMeans();
+      mbkm.setRandomGenerator(new MersenneTwister(123456789));
+      mbkm.setBatchSize(0);
+      mbkm.cluster(data, 3);
+   }
+
+   private static double sumSquaredError(DoubleMatrix2D data, DoubleMatrix2D partition, DoubleMatrix2D means)
+   {
+      double error = 0;
+      for (int i = 0; i < data.rows(); ++i)
+      {
+         for (int k = 0; k < partition.columns(); ++k)
+         {
+            error += partition.getQuick(i, k) * distanceSquared(data, i, means, k);
+         }
+      }
+      return error;
+   }
+
+   private static double distanceSquared(DoubleMatrix2D data, int i, DoubleMatrix2D means, int k)
+   {
+      double distanceSquared = 0;
+      for (int j = 0; j < data.columns(); ++j)
+      {
+         double difference = data.getQuick(i, j) - means.getQuick(j, k);
+         distanceSquared += difference * difference;
+      }
+      return distanceSquared;
+   }
+}
@@ -0,0 +1,114 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import com.trickl.dataset.GaussianCircles2D;
+import org.junit.Assert;
+import org.junit.Test;
+import org.apache.commons.math3.random.MersenneTwister;
+
+public class MultiRestartClusterAlgorithmTest {
+
+   public MultiRestartClusterAlgorithmTest() {
+   }
+
+   @Test
+   public void ClusterGaussianCircles()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      // Set seed for repeatable results
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(2000);
+
+      MultiRestartClusterAlgorithm.Factory<KMeans> factory = new MultiRestartClusterAlgorithm.Factory<KMeans>() {
+
+         @Override
+         public KMeans create() {
+            return new KMeans();
+         }
+      };
+
+      // The same seed gives the same best restart whatever the thread count
+      MultiRestartClusterAlgorithm<KMeans> sequential = new MultiRestartClusterAlgorithm<KMeans>(factory);
+      sequential.setRandomGenerator(new MersenneTwister(123456789));
+      sequential.setRestarts(8);
+      sequential.setThreads(1);
+      sequential.cluster(data, 10);
+
+      MultiRestartClusterAlgorithm<KMeans> parallel = new MultiRestartClusterAlgorithm<KMeans>(factory);
+      parallel.setRandomGenerator(new MersenneTwister(123456789));
+      parallel.setRestarts(8);
+      parallel.setThreads(4);
+      parallel.cluster(data, 10);
+
+      Assert.assertEquals(sequential.getObjective(), parallel.getObjective(), 0);
+      Assert.assertArrayEquals(sequential.getBest().getLabels(), parallel.getBest().getLabels());
+
+      // The best restart is no worse than any single run from the same seeds
+      MersenneTwister seeds = new MersenneTwister(123456789);
+      for (int r = 0; r < 8; ++r)
+      {
+         KMeans km = new KMeans();
+         km.setRandomGenerator(new MersenneTwister(seeds.nextLong()));
+         km.cluster(data, 10);
+         Assert.assertTrue(sequential.getObjective() <= km.getObjective());
+      }
+   }
+
+   @Test
+   public void ClusterWithFuzzyCMeansAndKMedoids()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(200);
+
+      MultiRestartClusterAlgorithm<FuzzyCMeans> fcm = new MultiRestartClusterAlgorithm<FuzzyCMeans>(
+              new MultiRestartClusterAlgorithm.Factory<FuzzyCMeans>() {
+
+         @Override
+         public FuzzyCMeans create() {
+            return new FuzzyCMeans();
+         }
+      });
+      fcm.setRandomGenerator(new MersenneTwister(123456789));
+      fcm.setRestarts(4);
+      fcm.cluster(data, 3);
+      Assert.assertTrue(fcm.getObjective() > 0);
+      Assert.assertSame(fcm.getBest().getPartition(), fcm.getPartition());
+
+      MultiRestartClusterAlgorithm<KMedoids> kmedoids = new MultiRestartClusterAlgorithm<KMedoids>(
+              new MultiRestartClusterAlgorithm.Factory<KMedoids>() {
+
+         @Override
+         public KMedoids create() {
+            return new KMedoids();
+         }
+      });
+      kmedoids.setRandomGenerator(new MersenneTwister(123456789));
+      kmedoids.setRestarts(4);
+      kmedoids.cluster(data, 3);
+      Assert.assertTrue(kmedoids.getObjective() > 0);
+      Assert.assertEquals(data.rows(), kmedoids.getPartition().zSum(), 0);
+   }
+}
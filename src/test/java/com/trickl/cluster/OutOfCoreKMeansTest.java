@@ -0,0 +1,155 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import com.trickl.dataset.GaussianCircles2D;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.apache.commons.math3.random.MersenneTwister;
+
+public class OutOfCoreKMeansTest {
+
+   public OutOfCoreKMeansTest() {
+   }
+
+   @Test
+   public void ClusterGaussianCircles() throws IOException
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      // Set seed for repeatable results
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(3000);
+
+      File file = writeRows(data, false);
+      try
+      {
+         // Read in small chunks to cross several mappings
+         OutOfCoreKMeans okm = new OutOfCoreKMeans();
+         okm.setRandomGenerator(new MersenneTwister(123456789));
+         okm.setChunkRows(256);
+         okm.cluster(file, data.columns(), 3);
+
+         KMeans km = new KMeans();
+         km.setRandomGenerator(new MersenneTwister(123456789));
+         km.cluster(data, 3);
+
+         // Given the same initial partition, the solution should match
+         int[] labels = okm.getLabels();
+         Assert.assertEquals(data.rows(), labels.length);
+         for (int i = 0; i < data.rows(); ++i)
+         {
+            Assert.assertEquals(1.0, km.getPartition().getQuick(i, labels[i]), 0);
+         }
+         for (int k = 0; k < 3; ++k)
+         {
+            for (int j = 0; j < data.columns(); ++j)
+            {
+               Assert.assertEquals(km.getMeans().getQuick(j, k), okm.getMeans().getQuick(j, k), 1e-9);
+            }
+         }
+      }
+      finally
+      {
+         file.delete();
+      }
+   }
+
+   @Test
+   public void ClusterFloatRows() throws IOException
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(3000);
+
+      File file = writeRows(data, true);
+      try
+      {
+         OutOfCoreKMeans okm = new OutOfCoreKMeans();
+         okm.setRandomGenerator(new MersenneTwister(123456789));
+         okm.setValueType(OutOfCoreKMeans.ValueType.FLOAT);
+         okm.cluster(file, data.columns(), 3);
+
+         // Each row should be assigned to its closest mean
+         DoubleMatrix2D means = okm.getMeans();
+         int[] labels = okm.getLabels();
+         for (int i = 0; i < data.rows(); ++i)
+         {
+            double assignedDistance = 0;
+            double minDistance = Double.MAX_VALUE;
+            for (int k = 0; k < 3; ++k)
+            {
+               double distance = 0;
+               for (int j = 0; j < data.columns(); ++j)
+               {
+                  double difference = (float) data.getQuick(i, j) - means.getQuick(j, k);
+                  distance += difference * difference;
+               }
+               minDistance = Math.min(minDistance, distance);
+               if (k == labels[i])
+               {
+                  assignedDistance = distance;
+               }
+            }
+            Assert.assertEquals(minDistance, assignedDistance, 1e-12);
+         }
+      }
+      finally
+      {
+         file.delete();
+      }
+   }
+
+   private static File writeRows(DoubleMatrix2D data, boolean asFloat) throws IOException
+   {
+      File file = File.createTempFile("outofcorekmeans", ".bin");
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      try
+      {
+         for (int i = 0; i < data.rows(); ++i)
+         {
+            for (int j = 0; j < data.columns(); ++j)
+            {
+               if (asFloat)
+               {
+                  out.writeFloat((float) data.getQuick(i, j));
+               }
+               else
+               {
+                  out.writeDouble(data.getQuick(i, j));
+               }
+            }
+         }
+      }
+      finally
+      {
+         out.close();
+      }
+      return file;
+   }
+}
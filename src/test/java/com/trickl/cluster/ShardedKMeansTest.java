@@ -0,0 +1,338 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import com.trickl.dataset.GaussianCircles2D;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.apache.commons.math3.random.MersenneTwister;
+
+public class ShardedKMeansTest {
+
+   public ShardedKMeansTest() {
+   }
+
+   private static final int[] SHARD_ENDS = {700, 1800, 3000};
+
+   private static List<KMeansShard> shard(DoubleMatrix2D data)
+   {
+      List<KMeansShard> shards = new ArrayList<KMeansShard>();
+      int from = 0;
+      for (int to : SHARD_ENDS)
+      {
+         shards.add(new KMeansShard(data.viewPart(from, 0, to - from, data.columns())));
+         from = to;
+      }
+      return shards;
+   }
+
+   @Test
+   public void InProcessMatchesKMeans() throws IOException
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      // Set seed for repeatable results
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(3000);
+
+      List<ShardTransport> transports = new ArrayList<ShardTransport>();
+      for (KMeansShard shard : shard(data))
+      {
+         transports.add(new InProcessShardTransport(shard));
+      }
+
+      ShardedKMeans skm = new ShardedKMeans();
+      skm.setRandomGenerator(new MersenneTwister(123456789));
+      skm.cluster(transports, 3);
+
+      KMeans km = new KMeans();
+      km.setRandomGenerator(new MersenneTwister(123456789));
+      km.cluster(data, 3);
+
+      // Given the same initial partition, the solution should match
+      int[] labels = skm.getLabels();
+      Assert.assertEquals(data.rows(), labels.length);
+      for (int i = 0; i < data.rows(); ++i)
+      {
+         Assert.assertEquals(1.0, km.getPartition().getQuick(i, labels[i]), 0);
+      }
+      for (int k = 0; k < 3; ++k)
+      {
+         for (int j = 0; j < data.columns(); ++j)
+         {
+            Assert.assertEquals(km.getMeans().getQuick(j, k), skm.getMeans().getQuick(j, k), 1e-9);
+         }
+      }
+      Assert.assertEquals(km.getObjective(), skm.getObjective(), 1e-9 * km.getObjective());
+   }
+
+   @Test
+   public void LoopbackSocketsMatchInProcess() throws IOException
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(3000);
+
+      List<KMeansShardServer> servers = new ArrayList<KMeansShardServer>();
+      List<ShardTransport> transports = new ArrayList<ShardTransport>();
+      try
+      {
+         for (KMeansShard shard : shard(data))
+         {
+            KMeansShardServer server = new KMeansShardServer(shard);
+            servers.add(server);
+            Thread thread = new Thread(server);
+            thread.setDaemon(true);
+            thread.start();
+            transports.add(new SocketShardTransport(server.getAddress(), server.getPort()));
+         }
+
+         ShardedKMeans socketKm = new ShardedKMeans();
+         socketKm.setRandomGenerator(new MersenneTwister(123456789));
+         socketKm.cluster(transports, 4);
+
+         List<ShardTransport> inProcess = new ArrayList<ShardTransport>();
+         for (KMeansShard shard : shard(data))
+         {
+            inProcess.add(new InProcessShardTransport(shard));
+         }
+         ShardedKMeans localKm = new ShardedKMeans();
+         localKm.setRandomGenerator(new MersenneTwister(123456789));
+         localKm.cluster(inProcess, 4);
+
+         Assert.assertArrayEquals(localKm.getLabels(), socketKm.getLabels());
+         for (int k = 0; k < 4; ++k)
+         {
+            for (int j = 0; j < data.columns(); ++j)
+            {
+               Assert.assertEquals(localKm.getMeans().getQuick(j, k), socketKm.getMeans().getQuick(j, k), 0);
+            }
+         }
+      }
+      finally
+      {
+         for (ShardTransport transport : transports)
+         {
+            transport.close();
+         }
+         for (KMeansShardServer server : servers)
+         {
+            server.close();
+         }
+      }
+   }
+
+   @Test
+   public void RejectedLabelsKeepPartition()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      DoubleMatrix2D data = gaussianCircles.generate(100);
+
+      KMeansShard shard = new KMeansShard(data);
+      int[] labels = new int[100];
+      for (int i = 0; i < labels.length; ++i)
+      {
+         labels[i] = i % 4;
+      }
+      shard.initialize(labels, 4);
+
+      int[] invalidLabels = new int[100];
+      invalidLabels[99] = 7;
+      try
+      {
+         shard.initialize(invalidLabels, 4);
+         Assert.fail("Expected the shard to reject the label.");
+      }
+      catch (IllegalArgumentException e)
+      {
+      }
+      Assert.assertArrayEquals(labels, shard.getLabels());
+   }
+
+   @Test
+   public void ServerRejectsMalformedRequests() throws IOException
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      DoubleMatrix2D data = gaussianCircles.generate(100);
+
+      KMeansShardServer server = new KMeansShardServer(new KMeansShard(data));
+      Thread thread = new Thread(server);
+      thread.setDaemon(true);
+      thread.start();
+      try
+      {
+         // A negative length is refused before anything is allocated
+         Socket socket = new Socket(server.getAddress(), server.getPort());
+         try
+         {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeByte(KMeansShardServer.INITIALIZE);
+            out.writeInt(4);
+            out.writeInt(-1);
+            out.flush();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            Assert.assertEquals(KMeansShardServer.ERROR, in.readByte());
+            Assert.assertTrue(in.readUTF().contains("values"));
+         }
+         finally
+         {
+            socket.close();
+         }
+
+         // A length that does not match the shard is refused too
+         SocketShardTransport transport = new SocketShardTransport(server.getAddress(), server.getPort());
+         try
+         {
+            transport.assign(new double[1], 4);
+            Assert.fail("Expected the shard to reject the means.");
+         }
+         catch (IOException e)
+         {
+            Assert.assertTrue(e.getMessage().contains("values"));
+         }
+         finally
+         {
+            closeQuietly(transport);
+         }
+
+         // The server still serves, and a rejected label keeps the connection
+         transport = new SocketShardTransport(server.getAddress(), server.getPort());
+         try
+         {
+            int[] labels = new int[100];
+            labels[3] = 7;
+            try
+            {
+               transport.initialize(labels, 4);
+               Assert.fail("Expected the shard to reject the label.");
+            }
+            catch (IOException e)
+            {
+               Assert.assertTrue(e.getMessage().contains("not a cluster"));
+            }
+            Assert.assertEquals(100, transport.rows());
+         }
+         finally
+         {
+            transport.close();
+         }
+      }
+      finally
+      {
+         server.close();
+      }
+   }
+
+   @Test
+   public void WorkerProcesses() throws IOException
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(3000);
+
+      File file = File.createTempFile("shardedkmeans", ".bin");
+      List<Process> processes = new ArrayList<Process>();
+      List<ShardTransport> transports = new ArrayList<ShardTransport>();
+      try
+      {
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+         try
+         {
+            for (int i = 0; i < data.rows(); ++i)
+            {
+               for (int j = 0; j < data.columns(); ++j)
+               {
+                  out.writeDouble(data.getQuick(i, j));
+               }
+            }
+         }
+         finally
+         {
+            out.close();
+         }
+
+         // Each worker is a separate JVM serving its own block of the file
+         String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+         int from = 0;
+         for (int to : SHARD_ENDS)
+         {
+            Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    KMeansShardServer.class.getName(), file.getPath(), String.valueOf(data.columns()),
+                    String.valueOf(from), String.valueOf(to - from)).start();
+            processes.add(process);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            int port = Integer.parseInt(reader.readLine().trim());
+            transports.add(new SocketShardTransport(InetAddress.getByName(null), port));
+            from = to;
+         }
+
+         ShardedKMeans processKm = new ShardedKMeans();
+         processKm.setRandomGenerator(new MersenneTwister(123456789));
+         processKm.cluster(transports, 3);
+
+         KMeans km = new KMeans();
+         km.setRandomGenerator(new MersenneTwister(123456789));
+         km.cluster(data, 3);
+         Assert.assertArrayEquals(km.getLabels(), processKm.getLabels());
+      }
+      finally
+      {
+         for (ShardTransport transport : transports)
+         {
+            closeQuietly(transport);
+         }
+         for (Process process : processes)
+         {
+            process.destroy();
+         }
+         file.delete();
+      }
+   }
+
+   private static void closeQuietly(ShardTransport transport)
+   {
+      try
+      {
+         transport.close();
+      }
+      catch (IOException e)
+      {
+         // The server may already have dropped the connection
+      }
+   }
+}
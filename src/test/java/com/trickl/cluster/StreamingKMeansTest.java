@@ -0,0 +1,98 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import com.trickl.dataset.GaussianCircles2D;
+import org.junit.Assert;
+import org.junit.Test;
+import org.apache.commons.math3.random.MersenneTwister;
+
+public class StreamingKMeansTest {
+
+   public StreamingKMeansTest() {
+   }
+
+   @Test
+   public void ClusterGaussianCircles()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      // Set seed for repeatable results
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = gaussianCircles.generate(3000);
+
+      StreamingKMeans skm = new StreamingKMeans(3);
+
+      // Stream the features one at a time, then the remainder as a batch
+      double[] point = new double[data.columns()];
+      for (int i = 0; i < 1000; ++i)
+      {
+         for (int j = 0; j < data.columns(); ++j)
+         {
+            point[j] = data.getQuick(i, j);
+         }
+         skm.observe(point);
+      }
+      skm.observeBatch(data.viewPart(1000, 0, 2000, data.columns()));
+
+      Assert.assertEquals(3000, skm.getObservations());
+      long total = 0;
+      for (long count : skm.getCounts())
+      {
+         total += count;
+      }
+      Assert.assertEquals(3000, total);
+
+      // Each mean is the mean of the features assigned to it as they arrived,
+      // so it should be close to the final KMeans solution
+      KMeans km = new KMeans();
+      km.setRandomGenerator(new MersenneTwister(123456789));
+      km.cluster(data, 3);
+
+      DoubleMatrix2D streamingMeans = skm.getMeans();
+      double streamingError = 0;
+      double fullError = 0;
+      for (int i = 0; i < data.rows(); ++i)
+      {
+         streamingError += closestDistanceSquared(data, i, streamingMeans);
+         fullError += closestDistanceSquared(data, i, km.getMeans());
+      }
+      System.out.println("Streaming SSE: " + streamingError + " Full SSE: " + fullError);
+      Assert.assertTrue(streamingError < 1.5 * fullError);
+   }
+
+   private static double closestDistanceSquared(DoubleMatrix2D data, int i, DoubleMatrix2D means)
+   {
+      double minDistanceSquared = Double.MAX_VALUE;
+      for (int k = 0; k < means.columns(); ++k)
+      {
+         double distanceSquared = 0;
+         for (int j = 0; j < data.columns(); ++j)
+         {
+            double difference = data.getQuick(i, j) - means.getQuick(j, k);
+            distanceSquared += difference * difference;
+         }
+         minDistanceSquared = Math.min(minDistanceSquared, distanceSquared);
+      }
+      return minDistanceSquared;
+   }
+}
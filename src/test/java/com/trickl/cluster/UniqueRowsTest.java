@@ -0,0 +1,117 @@
+/*
+ * This file is part of the Trickl Open Source Libraries.
+ *
+ * Trickl Open Source Libraries - http://open.trickl.com/
+ *
+ * Copyright (C) 2011 Tim Gee.
+ *
+ * Trickl Open Source Libraries are free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Trickl Open Source Libraries are distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this project.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.trickl.cluster;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
+import com.trickl.dataset.GaussianCircles2D;
+import org.junit.Assert;
+import org.junit.Test;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+public class UniqueRowsTest {
+
+   public UniqueRowsTest() {
+   }
+
+   private static DoubleMatrix2D duplicate(DoubleMatrix2D data, int copies, RandomGenerator random)
+   {
+      DoubleMatrix2D duplicated = new DenseDoubleMatrix2D(data.rows() * copies, data.columns());
+      for (int i = 0; i < duplicated.rows(); i++)
+      {
+         int row = random.nextInt(data.rows());
+         for (int j = 0; j < data.columns(); j++)
+         {
+            duplicated.setQuick(i, j, data.getQuick(row, j));
+         }
+      }
+      return duplicated;
+   }
+
+   @Test
+   public void CollapseDuplicateRows()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      DoubleMatrix2D data = duplicate(gaussianCircles.generate(200), 5, new MersenneTwister(123456789));
+      data.setQuick(0, 0, -0.0);
+      data.setQuick(1, 0, 0.0);
+      data.setQuick(1, 1, data.getQuick(0, 1));
+
+      UniqueRows unique = new UniqueRows(data);
+      Assert.assertTrue(unique.getRows().rows() <= 200);
+
+      double totalWeight = 0;
+      for (double weight : unique.getWeights())
+      {
+         totalWeight += weight;
+      }
+      Assert.assertEquals(data.rows(), totalWeight, 0);
+
+      // Every row maps back to a distinct row of the same values
+      int[] indices = unique.getIndices();
+      for (int i = 0; i < data.rows(); i++)
+      {
+         for (int j = 0; j < data.columns(); j++)
+         {
+            Assert.assertEquals(data.getQuick(i, j), unique.getRows().getQuick(indices[i], j), 0);
+         }
+      }
+      Assert.assertEquals(indices[0], indices[1]);
+   }
+
+   @Test
+   public void WeightedClusteringMatchesDuplicatedData()
+   {
+      GaussianCircles2D gaussianCircles = new GaussianCircles2D();
+      gaussianCircles.setRandomGenerator(new MersenneTwister(123456789));
+      gaussianCircles.setRadiusStd(0.20);
+      DoubleMatrix2D data = duplicate(gaussianCircles.generate(500), 8, new MersenneTwister(123456789));
+      UniqueRows unique = new UniqueRows(data);
+
+      // The weighted objective over the distinct rows is the objective over all the data
+      KMeans km = new KMeans();
+      km.setRandomGenerator(new MersenneTwister(123456789));
+      km.setPartitionGenerator(new KMeansPlusPlusPartitionGenerator());
+      km.cluster(unique.getRows(), unique.getWeights(), 4);
+      Assert.assertEquals(km.getObjective(), km.evaluateObjective(data), 1e-9 * km.getObjective());
+
+      FuzzyCMeans fcm = new FuzzyCMeans();
+      fcm.setRandomGenerator(new MersenneTwister(123456789));
+      fcm.cluster(unique.getRows(), unique.getWeights(), 4);
+      Assert.assertEquals(fcm.getObjective(), fcm.evaluateObjective(data), 1e-6 * fcm.getObjective());
+
+      // Expanded labels agree with predicting every row
+      int[] labels = new int[unique.getRows().rows()];
+      for (int u = 0; u < labels.length; u++)
+      {
+         labels[u] = km.getModel().predict(unique.getRows().viewRow(u).toArray());
+      }
+      int[] expanded = unique.expandLabels(labels);
+      DoubleMatrix2D partition = unique.expandPartition(km.getPartition());
+      for (int i = 0; i < data.rows(); i++)
+      {
+         Assert.assertEquals(km.getModel().predict(data.viewRow(i).toArray()), expanded[i]);
+         Assert.assertEquals(1, partition.getQuick(i, expanded[i]), 0);
+      }
+   }
+}